@@ -0,0 +1,73 @@
+package benchmarks;
+
+import image.Image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Builds the deterministic inputs the benchmarks share.
+ * A benchmark "size" is the side of the padded square image: the generated
+ * image is size x (size * 3 / 4), so that padding always has work to do and
+ * the block grid has the same shape as in {@link image.BlockSplitter}.
+ */
+final class BenchmarkImages {
+	private BenchmarkImages() {
+	}
+
+	/**
+	 * Returns the height of the generated image for a size.
+	 *
+	 * @param size The side of the padded image
+	 * @return The unpadded height
+	 */
+	static int heightOf(int size) {
+		return size * 3 / 4;
+	}
+
+	/**
+	 * Generates smooth random content: a gradient with noise, so that
+	 * blocks differ in brightness the way photographs do.
+	 *
+	 * @param size The side of the padded image
+	 * @return The unpadded image
+	 */
+	static Image generate(int size) {
+		int width = size;
+		int height = heightOf(size);
+		int[] pixels = new int[width * height];
+		Random random = new Random(size);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int level = Math.min(255, (x + y) * 255 / (width + height) + random.nextInt(32));
+				pixels[y * width + x] = 0xFF000000 | level << 16 | (255 - level) << 8 | random.nextInt(256);
+			}
+		}
+		return new Image(pixels, width, height);
+	}
+
+	/**
+	 * Writes a generated image to a temporary PNG file, deleted on exit.
+	 *
+	 * @param size The side of the padded image
+	 * @return The file
+	 * @throws IOException If the file cannot be written
+	 */
+	static File writeTemporary(int size) throws IOException {
+		Image image = generate(size);
+		BufferedImage buffered = new BufferedImage(image.getWidth(), image.getHeight(),
+				BufferedImage.TYPE_INT_RGB);
+		int[] row = new int[image.getWidth()];
+		for (int y = 0; y < image.getHeight(); y++) {
+			image.getRow(y, row, 0);
+			buffered.setRGB(0, y, image.getWidth(), 1, row, 0, image.getWidth());
+		}
+		File file = File.createTempFile("benchmark-" + size + "-", ".png");
+		file.deleteOnExit();
+		ImageIO.write(buffered, "png", file);
+		return file;
+	}
+}
@@ -0,0 +1,155 @@
+package benchmarks;
+
+import ascii_art.AsciiArtAlgorithm;
+import image.BlockGrid;
+import image.BlockSplitter;
+import image.BrightnessTable;
+import image.Image;
+import image_char_matching.StructuralCharMatcher;
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the block stage of the pipeline at every combination of image
+ * size and resolution: splitting into block views, the per-pixel block
+ * brightness path, building the summed-area table, the O(1) table lookups
+ * that replace the per-pixel path, and a full uncached conversion in both
+ * the padded square grid and the fitted grid that follows the image.
+ * The fitted grid has res columns and, for these 4:3 images, 3/4 as many rows.
+ * Resolutions finer than the image are clamped to one block per pixel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g", "--add-modules=jdk.incubator.vector"})
+public class BlockBenchmark {
+	private static final char[] CHARSET = "0123456789".toCharArray();
+
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	@Param({"2", "16", "128", "1024"})
+	public int res;
+
+	private Image image;
+	private Image padded;
+	private Image[][] blocks;
+	private BrightnessTable table;
+	private int[] pixels;
+	private SubImgCharMatcher matcher;
+	private StructuralCharMatcher structural;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		res = Math.min(res, size);
+		image = BenchmarkImages.generate(size);
+		padded = image.padToPowerOfTwo();
+		blocks = BlockSplitter.splitIntoBlocks(padded, res);
+		table = new BrightnessTable(image);
+		pixels = new int[image.getWidth() * image.getHeight()];
+		image.getRegion(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+		matcher = new SubImgCharMatcher(CHARSET);
+		structural = new StructuralCharMatcher(matcher);
+		AsciiArtAlgorithm.setParallelism(1);
+	}
+
+	/**
+	 * Splits the padded image into res x res block views.
+	 */
+	@Benchmark
+	public Image[][] splitIntoBlocks() {
+		return BlockSplitter.splitIntoBlocks(padded, res);
+	}
+
+	/**
+	 * Sums every pixel of every block, the path the table replaced.
+	 */
+	@Benchmark
+	public double computeBlockBrightness() {
+		double sum = 0;
+		for (Image[] row : blocks) {
+			for (Image block : row) {
+				sum += BlockSplitter.computeBlockBrightness(block);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Builds the summed-area table of the unpadded image, as the pipeline
+	 * does now that padding is virtual.
+	 */
+	@Benchmark
+	public BrightnessTable buildTable() {
+		return new BrightnessTable(image);
+	}
+
+	/**
+	 * Looks up every block's brightness in a prebuilt table, shifting the
+	 * padded grid onto the unpadded image.
+	 */
+	@Benchmark
+	public double tableBrightness() {
+		int blockWidth = Math.max(padded.getWidth(), padded.getHeight()) / res;
+		int padTop = (padded.getHeight() - image.getHeight()) / 2;
+		int padLeft = (padded.getWidth() - image.getWidth()) / 2;
+		double sum = 0;
+		for (int by = 0; by < res; by++) {
+			for (int bx = 0; bx < res; bx++) {
+				sum += table.blockBrightness(by * blockWidth - padTop, bx * blockWidth - padLeft,
+						blockWidth, blockWidth);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Converts a fresh image over the same pixels on one thread, with the
+	 * result cache cleared, so padding, the table and matching are all
+	 * measured.
+	 */
+	@Benchmark
+	public char[][] convert() {
+		AsciiArtAlgorithm.getCache().clear();
+		Image fresh = new Image(pixels, image.getWidth(), image.getHeight());
+		return new AsciiArtAlgorithm(fresh, res, matcher, res).run();
+	}
+
+	/**
+	 * Converts a fresh image as {@link #convert()} does, in a fitted grid
+	 * with no power-of-two padding.
+	 */
+	@Benchmark
+	public char[][] convertFitted() {
+		AsciiArtAlgorithm.getCache().clear();
+		Image fresh = new Image(pixels, image.getWidth(), image.getHeight());
+		BlockGrid grid = BlockGrid.fitted(fresh.getWidth(), fresh.getHeight(), res);
+		return new AsciiArtAlgorithm(fresh, grid, matcher).run();
+	}
+
+	/**
+	 * Converts a fresh image in a fitted grid as {@link #convertFitted()}
+	 * does, matching blocks by their structure instead of their brightness.
+	 */
+	@Benchmark
+	public char[][] convertStructural() {
+		Image fresh = new Image(pixels, image.getWidth(), image.getHeight());
+		BlockGrid grid = BlockGrid.fitted(fresh.getWidth(), fresh.getHeight(), res);
+		return new AsciiArtAlgorithm(fresh, grid, structural).run();
+	}
+}
@@ -0,0 +1,98 @@
+package benchmarks;
+
+import ascii_art.AsciiArtAlgorithm;
+import image_char_matching.ErrorDiffusion;
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of error diffusion against plain matching, on a
+ * res x res grid of block brightness values: a gradient with a little noise,
+ * where a small charset bands the most. Diffusion runs on the calling thread
+ * and as a wavefront on a pool of the given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DitherBenchmark {
+	private static final char[] CHARSET = " .:-=+*#%@".toCharArray();
+
+	@Param({"128", "1024", "4096"})
+	public int res;
+
+	@Param({"floyd-steinberg", "atkinson"})
+	public String kernel;
+
+	@Param({"4"})
+	public int parallelism;
+
+	private double[][] brightness;
+	private SubImgCharMatcher matcher;
+	private ErrorDiffusion.Kernel diffusion;
+	private ForkJoinPool pool;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		brightness = new double[res][res];
+		Random random = new Random(res);
+		for (int y = 0; y < res; y++) {
+			for (int x = 0; x < res; x++) {
+				double gradient = (x + y) / (2.0 * res);
+				brightness[y][x] = Math.min(1, Math.max(0, gradient + random.nextGaussian() * 0.01));
+			}
+		}
+		matcher = new SubImgCharMatcher(CHARSET);
+		matcher.getCharByImageBrightness(0);
+		diffusion = ErrorDiffusion.Kernel.forName(kernel);
+		pool = new ForkJoinPool(parallelism);
+		AsciiArtAlgorithm.setParallelism(1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Matches every block on its own, the baseline.
+	 */
+	@Benchmark
+	public char[][] plain() {
+		return AsciiArtAlgorithm.convertBrightness(brightness, matcher);
+	}
+
+	/**
+	 * Matches with error diffusion on the calling thread.
+	 */
+	@Benchmark
+	public char[][] dither() {
+		return ErrorDiffusion.match(brightness, matcher, diffusion, null);
+	}
+
+	/**
+	 * Matches with error diffusion as a wavefront on the pool.
+	 */
+	@Benchmark
+	public char[][] ditherParallel() {
+		return ErrorDiffusion.match(brightness, matcher, diffusion, pool);
+	}
+}
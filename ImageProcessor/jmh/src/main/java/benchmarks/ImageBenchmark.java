@@ -0,0 +1,61 @@
+package benchmarks;
+
+import image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading an image from a PNG file and padding it to powers of two.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ImageBenchmark {
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	private File file;
+	private Image image;
+	private int[] pixels;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		file = BenchmarkImages.writeTemporary(size);
+		image = BenchmarkImages.generate(size);
+		pixels = new int[image.getWidth() * image.getHeight()];
+		image.getRegion(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+	}
+
+	/**
+	 * Decodes the PNG and fingerprints the pixels, as the shell does.
+	 */
+	@Benchmark
+	public Image load() throws IOException {
+		return new Image(file.getPath());
+	}
+
+	/**
+	 * Pads a fresh image over the same pixels, since padding is memoized.
+	 */
+	@Benchmark
+	public Image padToPowerOfTwo() {
+		return new Image(pixels, image.getWidth(), image.getHeight()).padToPowerOfTwo();
+	}
+}
@@ -0,0 +1,86 @@
+package benchmarks;
+
+import image.LuminanceKernel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the luminance kernel against its scalar fallback, on runs from a
+ * small block row to a whole large image: writing the luminance of a row, as
+ * the brightness table does, and summing it, as block brightness does.
+ * The forked JVM loads the Vector API module, so the kernel is vectorized
+ * wherever the CPU allows it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LuminanceBenchmark {
+	@Param({"64", "1024", "16384", "1048576"})
+	public int length;
+
+	private int[] pixels;
+	private int[] luminance;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		if (!LuminanceKernel.isVectorized()) {
+			System.out.println("Vector API not available, both paths run the scalar loop");
+		}
+		pixels = new int[length];
+		luminance = new int[length];
+		Random random = new Random(length);
+		for (int i = 0; i < length; i++) {
+			pixels[i] = random.nextInt() | 0xFF000000;
+		}
+	}
+
+	/**
+	 * Writes the luminance of every pixel with the kernel.
+	 */
+	@Benchmark
+	public int[] luminance() {
+		LuminanceKernel.luminance(pixels, 0, luminance, 0, length);
+		return luminance;
+	}
+
+	/**
+	 * Writes the luminance of every pixel with the scalar loop.
+	 */
+	@Benchmark
+	public int[] luminanceScalar() {
+		LuminanceKernel.luminanceScalar(pixels, 0, luminance, 0, length);
+		return luminance;
+	}
+
+	/**
+	 * Sums the luminance of every pixel with the kernel.
+	 */
+	@Benchmark
+	public long sum() {
+		return LuminanceKernel.sum(pixels, 0, length);
+	}
+
+	/**
+	 * Sums the luminance of every pixel with the scalar loop.
+	 */
+	@Benchmark
+	public long sumScalar() {
+		return LuminanceKernel.sumScalar(pixels, 0, length);
+	}
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a matcher, including compiling its lookup table, and
+ * matching a full grid of block brightness values at each resolution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatcherBenchmark {
+	@Param({"2", "16", "128", "1024"})
+	public int res;
+
+	@Param({"0123456789", " !\"#$%&'()*+,-./0123456789:;<=>?@ABCDEFGHIJKLMNOPQRSTUVWXYZ" +
+			"[\\]^_`abcdefghijklmnopqrstuvwxyz{|}~"})
+	public String charset;
+
+	private SubImgCharMatcher matcher;
+	private double[] brightness;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		matcher = new SubImgCharMatcher(charset.toCharArray());
+		matcher.getCharByImageBrightness(0);
+		brightness = new double[res * res];
+		Random random = new Random(res);
+		for (int i = 0; i < brightness.length; i++) {
+			brightness[i] = random.nextDouble();
+		}
+	}
+
+	/**
+	 * Builds a matcher and compiles its lookup table with one match.
+	 */
+	@Benchmark
+	public char construct() {
+		return new SubImgCharMatcher(charset.toCharArray()).getCharByImageBrightness(0.5);
+	}
+
+	/**
+	 * Matches res x res brightness values.
+	 */
+	@Benchmark
+	public void lookup(Blackhole blackhole) {
+		for (double value : brightness) {
+			blackhole.consume(matcher.getCharByImageBrightness(value));
+		}
+	}
+}
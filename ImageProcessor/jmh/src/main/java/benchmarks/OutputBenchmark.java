@@ -0,0 +1,80 @@
+package benchmarks;
+
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures both AsciiOutput implementations on a res x res grid. Console
+ * output goes to a stream that discards it, so the terminal is not measured;
+ * HTML output goes to a temporary file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+	private static final String CHARSET = "0123456789<>&";
+
+	@Param({"2", "16", "128", "1024"})
+	public int res;
+
+	private char[][] chars;
+	private File htmlFile;
+	private PrintStream originalOut;
+	private ConsoleAsciiOutput console;
+	private HtmlAsciiOutput html;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		chars = new char[res][res];
+		Random random = new Random(res);
+		for (char[] row : chars) {
+			for (int x = 0; x < row.length; x++) {
+				row[x] = CHARSET.charAt(random.nextInt(CHARSET.length()));
+			}
+		}
+		htmlFile = File.createTempFile("benchmark", ".html");
+		htmlFile.deleteOnExit();
+		originalOut = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		console = new ConsoleAsciiOutput();
+		html = new HtmlAsciiOutput(htmlFile.getPath(), "Courier New");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.setOut(originalOut);
+	}
+
+	@Benchmark
+	public void console() {
+		console.out(chars);
+	}
+
+	@Benchmark
+	public void html() {
+		html.out(chars);
+	}
+}
@@ -0,0 +1,180 @@
+package ascii_art;
+
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAnimationOutput;
+import image.Frame;
+import image.FrameReader;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * A non-interactive front end that converts an animated GIF, or a directory
+ * of numbered frames, to an ASCII art animation.
+ * Usage: --animate &lt;gif | directory&gt; [--config &lt;file&gt;]
+ * [--charset &lt;args&gt;] [--res &lt;n&gt;] [--round abs|up|down]
+ * [--output console|html] [--out &lt;file&gt;] [--fps &lt;n&gt;] [--loops &lt;n&gt;].
+ * Settings are read as in batch mode (see {@link BatchRunner}). Frames are
+ * converted with a {@link FrameConverter}, which reuses unchanged blocks, and
+ * the conversion rate and the share of reused blocks are reported. The result
+ * is then played in place on the console, or written to one HTML file that
+ * plays it. The fps setting is used for frames that do not set their own
+ * delay, such as directory frames.
+ */
+public class AnimationRunner {
+	// Options
+	private static final String OPT_ANIMATE = "--animate";
+	private static final String KEY_CHARSET = "charset";
+	private static final String KEY_RES = "res";
+	private static final String KEY_ROUND = "round";
+	private static final String KEY_OUTPUT = "output";
+	private static final String KEY_OUT = "out";
+	private static final String KEY_FPS = "fps";
+	private static final String KEY_LOOPS = "loops";
+
+	// Defaults
+	private static final String DEFAULT_CHARSET = "0-9";
+	private static final String DEFAULT_RES = "64";
+	private static final String DEFAULT_ROUND = "abs";
+	private static final String DEFAULT_OUTPUT = "console";
+	private static final String DEFAULT_OUT = "out.html";
+	private static final String DEFAULT_FPS = "10";
+	private static final String DEFAULT_LOOPS = "1";
+
+	// Values
+	private static final String OUTPUT_CONSOLE = "console";
+	private static final String OUTPUT_HTML = "html";
+	private static final String FONT_NAME = "Courier New";
+	private static final int MILLIS_PER_SECOND = 1000;
+	private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+	// Messages
+	private static final String USAGE = "Usage: --animate <gif|directory> [--config <file>] " +
+			"[--charset <args>] [--res <n>] [--round abs|up|down] [--output console|html] " +
+			"[--out <file>] [--fps <n>] [--loops <n>]";
+	private static final String ERROR_PREFIX = "ERROR: ";
+	private static final String ERROR_CHARSET = "Charset is too small. Need at least 2 characters.";
+
+	/**
+	 * Checks whether command line arguments ask for animation mode.
+	 *
+	 * @param args The command line arguments
+	 * @return true if the first argument is --animate
+	 */
+	public static boolean isAnimationInvocation(String[] args) {
+		return args.length > 0 && args[0].equals(OPT_ANIMATE);
+	}
+
+	/**
+	 * Runs animation mode with the given command line arguments.
+	 *
+	 * @param args The command line arguments, starting with --animate
+	 * @return The process exit status: 0 on success
+	 */
+	public static int run(String[] args) {
+		char[] charset;
+		int resolution;
+		String roundingMode;
+		String outputType;
+		String out;
+		int frameDelay;
+		int loops;
+		try {
+			if (args.length < 2) {
+				throw new IllegalArgumentException("Missing input");
+			}
+			Properties settings = BatchRunner.parseSettings(args);
+			charset = BatchRunner.parseCharset(settings.getProperty(KEY_CHARSET, DEFAULT_CHARSET));
+			resolution = Integer.parseInt(settings.getProperty(KEY_RES, DEFAULT_RES));
+			roundingMode = settings.getProperty(KEY_ROUND, DEFAULT_ROUND).toLowerCase(Locale.ROOT);
+			outputType = settings.getProperty(KEY_OUTPUT, DEFAULT_OUTPUT);
+			out = settings.getProperty(KEY_OUT, DEFAULT_OUT);
+			int fps = Integer.parseInt(settings.getProperty(KEY_FPS, DEFAULT_FPS));
+			loops = Integer.parseInt(settings.getProperty(KEY_LOOPS, DEFAULT_LOOPS));
+			if (resolution < 1 || fps < 1 || loops < 1 ||
+					!(roundingMode.equals("abs") || roundingMode.equals("up") || roundingMode.equals("down")) ||
+					!(outputType.equals(OUTPUT_CONSOLE) || outputType.equals(OUTPUT_HTML))) {
+				throw new IllegalArgumentException("Invalid settings: " + settings);
+			}
+			frameDelay = Math.max(1, MILLIS_PER_SECOND / fps);
+		} catch (IllegalArgumentException | IOException e) {
+			System.out.println(ERROR_PREFIX + e.getMessage());
+			System.out.println(USAGE);
+			return 2;
+		}
+		if (charset.length < 2) {
+			System.out.println(ERROR_PREFIX + ERROR_CHARSET);
+			return 2;
+		}
+
+		SubImgCharMatcher matcher = new SubImgCharMatcher(charset, roundingMode);
+		FrameConverter converter = new FrameConverter(resolution, matcher);
+		List<char[][]> frames = new ArrayList<>();
+		List<Integer> delays = new ArrayList<>();
+		long start = System.nanoTime();
+		try (FrameReader reader = new FrameReader(args[1], frameDelay)) {
+			for (Frame frame = reader.next(); frame != null; frame = reader.next()) {
+				frames.add(converter.convert(frame));
+				delays.add(frame.getDelayMillis());
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println(ERROR_PREFIX + "Failed to read frames: " + e.getMessage());
+			return 1;
+		}
+		if (frames.isEmpty()) {
+			System.out.println(ERROR_PREFIX + "No frames in " + args[1]);
+			return 1;
+		}
+		double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+		long blocks = converter.getBlocksMatched() + converter.getBlocksReused();
+		String summary = String.format("%d frames in %.2f s, %.1f frames/s, %.1f%% of blocks reused",
+				frames.size(), seconds, frames.size() / seconds,
+				blocks == 0 ? 0.0 : 100.0 * converter.getBlocksReused() / blocks);
+
+		if (outputType.equals(OUTPUT_HTML)) {
+			HtmlAnimationOutput html = new HtmlAnimationOutput(out, FONT_NAME);
+			try {
+				html.begin(resolution);
+				for (int i = 0; i < frames.size(); i++) {
+					html.writeFrame(frames.get(i), delays.get(i));
+				}
+			} catch (IOException e) {
+				System.out.println(ERROR_PREFIX + "Failed to write to " + out);
+				return 1;
+			} finally {
+				try {
+					html.end();
+				} catch (IOException e) {
+					System.out.println(ERROR_PREFIX + "Failed to write to " + out);
+				}
+			}
+		} else {
+			ConsoleAsciiOutput console = new ConsoleAsciiOutput(true);
+			try {
+				for (int loop = 0; loop < loops; loop++) {
+					for (int i = 0; i < frames.size(); i++) {
+						console.out(frames.get(i));
+						Thread.sleep(delays.get(i));
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		System.out.println(summary);
+		return 0;
+	}
+
+	/**
+	 * Runs animation mode as a program of its own.
+	 *
+	 * @param args The command line arguments, starting with --animate
+	 */
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+}
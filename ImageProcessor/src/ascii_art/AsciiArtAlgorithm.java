@@ -1,10 +1,17 @@
 package ascii_art;
 
+import ascii_output.RowAsciiOutput;
+import image.BlockGrid;
 import image.Image;
-import image.BlockSplitter;
+import image.BrightnessTable;
+import image_char_matching.BrailleEncoder;
+import image_char_matching.ErrorDiffusion;
+import image_char_matching.StructuralCharMatcher;
 import image_char_matching.SubImgCharMatcher;
-import java.util.Arrays;
-import java.awt.Color;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 /**
  * An algorithm for converting images to ASCII art.
@@ -14,16 +21,27 @@ import java.awt.Color;
  */
 public class AsciiArtAlgorithm {
 	// Cache-related fields
-	private static int lastImageHash = 0;
-	private static int lastResolution = -1;
-	private static double[][] lastBlockBrightness = null;
-	private static Image[][] lastBlocks = null;
+	/** Default bound of the result cache, in bytes */
+	private static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+	private static final ResultCache cache = new ResultCache(DEFAULT_CACHE_BYTES);
+	private static final PipelineStats stats = new PipelineStats();
+
+	// Parallelism-related fields
+	/** Smallest number of blocks worth handing to a separate fork/join task */
+	private static final int MIN_BLOCKS_PER_TASK = 4096;
+	/** Number of blocks matched before their rows are handed to a row output */
+	private static final int BLOCKS_PER_BAND = 64 * 1024;
+	private static int parallelism = Runtime.getRuntime().availableProcessors();
+	private static ForkJoinPool pool = null;
 
 	// Instance fields
 	private final Image img;
-	private final int charsInRow;
-	private final char[] charset;
+	private final BlockGrid grid;
+	private final SubImgCharMatcher matcher;
+	private final StructuralCharMatcher structural;
+	private final BrailleEncoder braille;
 	private final int resolution;
+	private ErrorDiffusion.Kernel dithering = null;
 
 	/**
 	 * Constructs a new AsciiArtAlgorithm instance.
@@ -34,68 +52,559 @@ public class AsciiArtAlgorithm {
 	 * @param res        The resolution of the output
 	 */
 	public AsciiArtAlgorithm(Image img, int charsInRow, char[] charset, int res) {
+		this(img, charsInRow, new SubImgCharMatcher(charset), res);
+	}
+
+	/**
+	 * Constructs a new AsciiArtAlgorithm instance that matches with an existing,
+	 * possibly long-lived, matcher instead of building one for the charset.
+	 *
+	 * @param img        The input image to convert to ASCII art
+	 * @param charsInRow The number of characters to use per row in the output
+	 * @param matcher    The matcher holding the charset to use
+	 * @param res        The resolution of the output
+	 */
+	public AsciiArtAlgorithm(Image img, int charsInRow, SubImgCharMatcher matcher, int res) {
+		this(img, BlockGrid.padded(img.getWidth(), img.getHeight(), charsInRow), matcher, null, null,
+				res);
+	}
+
+	/**
+	 * Constructs a new AsciiArtAlgorithm instance that converts the image in
+	 * the given block grid, such as a fitted grid that follows the image's
+	 * aspect ratio (see {@link BlockGrid#fitted}).
+	 *
+	 * @param img     The input image to convert to ASCII art
+	 * @param grid    The block grid, built for the size of img
+	 * @param matcher The matcher holding the charset to use
+	 */
+	public AsciiArtAlgorithm(Image img, BlockGrid grid, SubImgCharMatcher matcher) {
+		this(img, grid, matcher, null, null, grid.getColumns());
+	}
+
+	/**
+	 * Constructs a new AsciiArtAlgorithm instance that matches blocks by
+	 * their structure as well as their brightness (see
+	 * {@link StructuralCharMatcher}).
+	 *
+	 * @param img        The input image to convert to ASCII art
+	 * @param grid       The block grid, built for the size of img
+	 * @param structural The structural matcher, over the charset to use
+	 */
+	public AsciiArtAlgorithm(Image img, BlockGrid grid, StructuralCharMatcher structural) {
+		this(img, grid, structural.getBrightnessMatcher(), structural, null, grid.getColumns());
+	}
+
+	/**
+	 * Constructs a new AsciiArtAlgorithm instance that draws every block as a
+	 * braille pattern of 2 x 4 sub-pixels (see {@link BrailleEncoder}), with
+	 * no charset.
+	 *
+	 * @param img     The input image to convert to ASCII art
+	 * @param grid    The block grid, built for the size of img
+	 * @param braille The braille encoder
+	 */
+	public AsciiArtAlgorithm(Image img, BlockGrid grid, BrailleEncoder braille) {
+		this(img, grid, null, null, braille, grid.getColumns());
+	}
+
+	private AsciiArtAlgorithm(Image img, BlockGrid grid, SubImgCharMatcher matcher,
+			StructuralCharMatcher structural, BrailleEncoder braille, int res) {
 		this.img = img;
-		this.charsInRow = charsInRow;
-		this.charset = charset;
+		this.grid = grid;
+		this.matcher = matcher;
+		this.structural = structural;
+		this.braille = braille;
 		this.resolution = res;
 	}
 
+	/**
+	 * Sets the error diffusion kernel that brightness matching dithers with
+	 * (see {@link ErrorDiffusion}), or turns dithering off. Structural and
+	 * braille matching are never dithered.
+	 *
+	 * @param kernel The kernel, or null to match every block on its own
+	 */
+	public void setDithering(ErrorDiffusion.Kernel kernel) {
+		this.dithering = kernel;
+	}
+
+	/**
+	 * Sets the number of threads used to convert an image.
+	 * With a level of 1 the conversion runs on the calling thread; otherwise
+	 * the table build, block brightness and character matching are split into
+	 * row bands on a fork/join pool of that size. Every block is computed by
+	 * the same code either way, so the result does not depend on the level.
+	 * Conversions already running keep the pool they started with. The old
+	 * pool is not shut down, since they may still submit to it; its worker
+	 * threads are daemons that end once idle, and the pool is then collected.
+	 *
+	 * @param level The number of threads to use, at least 1
+	 * @throws IllegalArgumentException if level is smaller than 1
+	 */
+	public static synchronized void setParallelism(int level) {
+		if (level < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + level);
+		}
+		if (level != parallelism) {
+			// The next getPool() builds a pool of the new size
+			pool = null;
+		}
+		parallelism = level;
+	}
+
+	/**
+	 * Returns the number of threads used to convert an image.
+	 *
+	 * @return The parallelism level, at least 1
+	 */
+	public static synchronized int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Returns the cache shared by all conversions, which keeps the brightness
+	 * grids and character grids of recent runs. Its size bound and its hit,
+	 * miss and eviction counters are available through it.
+	 *
+	 * @return The result cache
+	 */
+	public static ResultCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Returns the per-stage timing, allocation and block counters of all
+	 * conversions (see {@link PipelineStats}).
+	 *
+	 * @return The pipeline statistics
+	 */
+	public static PipelineStats getStats() {
+		return stats;
+	}
+
 	/**
 	 * Runs the ASCII art conversion algorithm.
 	 * The algorithm processes the image in blocks, computing brightness values
 	 * and matching them to appropriate characters from the charset.
-	 * Includes caching mechanism to avoid redundant computations.
+	 * Block brightness is looked up in the image's summed-area table, which is
+	 * built once per image, so changing the resolution costs O(blocks).
+	 * Padding to powers of two is virtual: the table covers the original
+	 * image only, and blocks of a padded grid are shifted into it, the part
+	 * of a block outside the image counting as white (see {@link BlockGrid}).
+	 * Blocks of a fitted grid cover only real pixels.
+	 * Brightness grids and results are kept in an LRU cache (see
+	 * {@link #getCache()}) to avoid redundant computations. Structural
+	 * matching reads 64 cells per block from the same table, and braille
+	 * encoding 8, and neither is cached. Dithered results are not cached
+	 * either, but the brightness grid they start from is.
 	 *
 	 * @return A 2D array of characters representing the ASCII art
 	 */
 	public char[][] run() {
-		Image padded = img.padToPowerOfTwo();
-		int imageHash = Arrays.deepHashCode(buildPixelArray(padded));
-		boolean useCache = (lastImageHash == imageHash &&
-				lastResolution == charsInRow && lastBlockBrightness != null);
-		if (!useCache) {
-			lastBlocks = BlockSplitter.splitIntoBlocks(padded, charsInRow);
-			int numRows = lastBlocks.length;
-			int numCols = lastBlocks[0].length;
-			lastBlockBrightness = new double[numRows][numCols];
-			for (int by = 0; by < numRows; by++) {
-				for (int bx = 0; bx < numCols; bx++) {
-					lastBlockBrightness[by][bx] =
-							BlockSplitter.computeBlockBrightness(lastBlocks[by][bx]);
+		if (structural != null) {
+			return runStructural();
+		} else if (braille != null) {
+			return runBraille();
+		}
+		PipelineStats.Span span = stats.begin();
+		long fingerprint = img.getFingerprint();
+		String charsetKey = matcher.getCharsetKey();
+		String roundingMode = matcher.getActiveRoundingMode();
+		char[][] cached = dithering == null ?
+				cache.getResult(fingerprint, grid, charsetKey, roundingMode) : null;
+		if (cached != null) {
+			char[][] copy = copyOf(cached);
+			span.end(PipelineStats.Stage.LOOKUP, 0);
+			return copy;
+		}
+
+		ForkJoinPool workers = getPool();
+		double[][] brightness = cache.getBrightness(fingerprint, grid);
+		span.end(PipelineStats.Stage.LOOKUP, 0);
+		long blocks = grid.getBlockCount();
+		if (brightness == null) {
+			BrightnessTable table = img.getBrightnessTable(workers);
+			span.end(PipelineStats.Stage.TABLE, 0);
+			brightness = computeBlockBrightness(table, grid, workers);
+			cache.putBrightness(fingerprint, grid, brightness);
+			span.end(PipelineStats.Stage.BRIGHTNESS, blocks);
+		}
+
+		if (dithering != null) {
+			char[][] result = ErrorDiffusion.match(brightness, matcher, dithering, workers);
+			span.end(PipelineStats.Stage.MATCH, blocks);
+			return result;
+		}
+		char[][] result = matchBlocks(brightness, matcher, workers);
+		cache.putResult(fingerprint, grid, charsetKey, roundingMode, copyOf(result));
+		span.end(PipelineStats.Stage.MATCH, blocks);
+		return result;
+	}
+
+	/**
+	 * Runs the conversion and hands the rows of characters to an output as
+	 * they are matched, instead of returning them all at once. Brightness
+	 * matching looks up, matches and writes one band of rows at a time, so
+	 * besides the image's summed-area table only one band is held, whatever
+	 * the height of the grid. A result or brightness grid already in the
+	 * cache (see {@link #getCache()}) is used, but nothing is added to it.
+	 * Structural and braille matching, and dithering, which carries error
+	 * from each row to the next, run as {@link #run()} does and hand the
+	 * result over row by row. Time spent writing counts as matching in
+	 * {@link #getStats()}.
+	 *
+	 * @param output The output to write to, begun and ended by this method
+	 * @throws IOException If the output cannot be written
+	 */
+	public void run(RowAsciiOutput output) throws IOException {
+		if (structural != null || braille != null || dithering != null) {
+			writeRows(run(), output);
+			return;
+		}
+		PipelineStats.Span span = stats.begin();
+		long fingerprint = img.getFingerprint();
+		char[][] cached = cache.getResult(fingerprint, grid, matcher.getCharsetKey(),
+				matcher.getActiveRoundingMode());
+		if (cached != null) {
+			span.end(PipelineStats.Stage.LOOKUP, 0);
+			writeRows(cached, output);
+			return;
+		}
+		double[][] brightness = cache.getBrightness(fingerprint, grid);
+		span.end(PipelineStats.Stage.LOOKUP, 0);
+		ForkJoinPool workers = getPool();
+		BlockBrightness source;
+		if (brightness != null) {
+			source = (by, bx) -> brightness[by][bx];
+		} else {
+			BrightnessTable table = img.getBrightnessTable(workers);
+			span.end(PipelineStats.Stage.TABLE, 0);
+			source = (by, bx) -> table.blockBrightness(grid.getTop(by), grid.getLeft(bx),
+					grid.getBlockHeight(by), grid.getBlockWidth(bx));
+		}
+		matchToOutput(source, grid.getRows(), grid.getColumns(), matcher, workers, output);
+		span.end(PipelineStats.Stage.MATCH, grid.getBlockCount());
+	}
+
+	/**
+	 * Matches every block by its structure: the brightness of its 8x8 cells,
+	 * or one cell per pixel in blocks smaller than that, looked up in the
+	 * image's summed-area table, and its average brightness.
+	 *
+	 * @return The matched characters, indexed [row][column]
+	 */
+	private char[][] runStructural() {
+		PipelineStats.Span span = stats.begin();
+		ForkJoinPool workers = getPool();
+		BrightnessTable table = img.getBrightnessTable(workers);
+		span.end(PipelineStats.Stage.TABLE, 0);
+		int numCols = grid.getColumns();
+		char[][] result = new char[grid.getRows()][numCols];
+		forEachRow(workers, grid.getRows(), numCols, by -> {
+			double[] cells = new double[StructuralCharMatcher.CELLS];
+			int top = grid.getTop(by);
+			int blockHeight = grid.getBlockHeight(by);
+			int rows = Math.min(StructuralCharMatcher.GRID, blockHeight);
+			for (int bx = 0; bx < numCols; bx++) {
+				int left = grid.getLeft(bx);
+				int blockWidth = grid.getBlockWidth(bx);
+				int columns = Math.min(StructuralCharMatcher.GRID, blockWidth);
+				table.cellBrightness(top, left, blockHeight, blockWidth, rows, columns, cells);
+				result[by][bx] = structural.getCharByBlock(cells, rows, columns,
+						table.blockBrightness(top, left, blockHeight, blockWidth));
+			}
+		});
+		span.end(PipelineStats.Stage.MATCH, grid.getBlockCount());
+		return result;
+	}
+
+	/**
+	 * Encodes every block as a braille pattern of its 2 x 4 sub-pixels, or
+	 * one sub-pixel per pixel in blocks smaller than that, looked up in the
+	 * image's summed-area table.
+	 *
+	 * @return The patterns, indexed [row][column]
+	 */
+	private char[][] runBraille() {
+		PipelineStats.Span span = stats.begin();
+		ForkJoinPool workers = getPool();
+		BrightnessTable table = img.getBrightnessTable(workers);
+		span.end(PipelineStats.Stage.TABLE, 0);
+		int numCols = grid.getColumns();
+		char[][] result = new char[grid.getRows()][numCols];
+		forEachRow(workers, grid.getRows(), numCols, by -> {
+			double[] cells = new double[BrailleEncoder.DOT_ROWS * BrailleEncoder.DOT_COLUMNS];
+			int top = grid.getTop(by);
+			int blockHeight = grid.getBlockHeight(by);
+			int rows = Math.min(BrailleEncoder.DOT_ROWS, blockHeight);
+			for (int bx = 0; bx < numCols; bx++) {
+				int left = grid.getLeft(bx);
+				int blockWidth = grid.getBlockWidth(bx);
+				int columns = Math.min(BrailleEncoder.DOT_COLUMNS, blockWidth);
+				table.cellBrightness(top, left, blockHeight, blockWidth, rows, columns, cells);
+				result[by][bx] = braille.encode(cells, rows, columns);
+			}
+		});
+		span.end(PipelineStats.Stage.MATCH, grid.getBlockCount());
+		return result;
+	}
+
+	/**
+	 * Computes the average color of every block of the grid that {@link #run()}
+	 * matches. The colors come from the same summed-area table as the block
+	 * brightness, built with color sums, so calling this before run() reads
+	 * the pixels only once for both.
+	 *
+	 * @return The color of each block packed as 0x00RRGGBB, indexed
+	 *         [row][column]
+	 */
+	public int[][] computeBlockColors() {
+		PipelineStats.Span span = stats.begin();
+		ForkJoinPool workers = getPool();
+		BrightnessTable table = img.getBrightnessTable(workers, true);
+		span.end(PipelineStats.Stage.TABLE, 0);
+		int numCols = grid.getColumns();
+		int[][] colors = new int[grid.getRows()][numCols];
+		forEachRow(workers, grid.getRows(), numCols, by -> {
+			int top = grid.getTop(by);
+			int blockHeight = grid.getBlockHeight(by);
+			for (int bx = 0; bx < numCols; bx++) {
+				colors[by][bx] = table.blockColor(top, grid.getLeft(bx), blockHeight,
+						grid.getBlockWidth(bx));
+			}
+		});
+		span.end(PipelineStats.Stage.COLOR, grid.getBlockCount());
+		return colors;
+	}
+
+	/**
+	 * Converts an already computed block brightness grid to ASCII art, for
+	 * callers that compute block brightness themselves, such as
+	 * {@link image.StripBrightnessReader} for images too large to load. The
+	 * result cache is not used, since there is no image to fingerprint.
+	 *
+	 * @param brightness The brightness of each block, indexed [row][column]
+	 * @param matcher    The matcher holding the charset to use
+	 * @return A 2D array of characters representing the ASCII art
+	 */
+	public static char[][] convertBrightness(double[][] brightness, SubImgCharMatcher matcher) {
+		PipelineStats.Span span = stats.begin();
+		char[][] result = matchBlocks(brightness, matcher, getPool());
+		span.end(PipelineStats.Stage.MATCH, (long) brightness.length * brightness[0].length);
+		return result;
+	}
+
+	/**
+	 * Converts an already computed block brightness grid as
+	 * {@link #convertBrightness(double[][], SubImgCharMatcher)} does, handing
+	 * the rows to an output as they are matched instead of returning them.
+	 *
+	 * @param brightness The brightness of each block, indexed [row][column]
+	 * @param matcher    The matcher holding the charset to use
+	 * @param output     The output to write to, begun and ended by this method
+	 * @throws IOException If the output cannot be written
+	 */
+	public static void convertBrightness(double[][] brightness, SubImgCharMatcher matcher,
+			RowAsciiOutput output) throws IOException {
+		PipelineStats.Span span = stats.begin();
+		matchToOutput((by, bx) -> brightness[by][bx], brightness.length, brightness[0].length,
+				matcher, getPool(), output);
+		span.end(PipelineStats.Stage.MATCH, (long) brightness.length * brightness[0].length);
+	}
+
+	/**
+	 * Matches every block of a brightness grid to a character.
+	 *
+	 * @param brightness The brightness of each block, indexed [row][column]
+	 * @param matcher    The matcher holding the charset to use
+	 * @param workers    The pool to split the rows across, or null to match them
+	 *                   on the calling thread
+	 * @return The matched characters, indexed [row][column]
+	 */
+	private static char[][] matchBlocks(double[][] brightness, SubImgCharMatcher matcher,
+			ForkJoinPool workers) {
+		int numRows = brightness.length;
+		int numCols = brightness[0].length;
+		char[][] result = new char[numRows][numCols];
+		forEachRow(workers, numRows, numCols, by -> {
+			for (int bx = 0; bx < numCols; bx++) {
+				result[by][bx] = matcher.getCharByImageBrightness(brightness[by][bx]);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Matches blocks a band of rows at a time, writing the rows of each band
+	 * before the next one is matched into the same arrays.
+	 *
+	 * @param source  The brightness of every block
+	 * @param numRows The number of rows in the grid
+	 * @param numCols The number of blocks in each row
+	 * @param matcher The matcher holding the charset to use
+	 * @param workers The pool to split each band across, or null to match it
+	 *                on the calling thread
+	 * @param output  The output to write to, begun and ended by this method
+	 * @throws IOException If the output cannot be written
+	 */
+	private static void matchToOutput(BlockBrightness source, int numRows, int numCols,
+			SubImgCharMatcher matcher, ForkJoinPool workers, RowAsciiOutput output)
+			throws IOException {
+		int bandRows = Math.max(1, Math.min(numRows, BLOCKS_PER_BAND / numCols));
+		char[][] band = new char[bandRows][numCols];
+		output.begin(numCols);
+		try {
+			for (int first = 0; first < numRows; first += bandRows) {
+				int from = first;
+				int rows = Math.min(bandRows, numRows - first);
+				forEachRow(workers, rows, numCols, r -> {
+					for (int bx = 0; bx < numCols; bx++) {
+						band[r][bx] = matcher.getCharByImageBrightness(source.get(from + r, bx));
+					}
+				});
+				for (int r = 0; r < rows; r++) {
+					output.writeRow(band[r]);
 				}
 			}
-			lastImageHash = imageHash;
-			lastResolution = charsInRow;
+		} finally {
+			output.end();
+		}
+	}
+
+	/**
+	 * Hands a finished character grid to an output row by row.
+	 *
+	 * @param chars  The characters, indexed [row][column]
+	 * @param output The output to write to, begun and ended by this method
+	 * @throws IOException If the output cannot be written
+	 */
+	private static void writeRows(char[][] chars, RowAsciiOutput output) throws IOException {
+		output.begin(chars[0].length);
+		try {
+			for (char[] row : chars) {
+				output.writeRow(row);
+			}
+		} finally {
+			output.end();
 		}
+	}
 
-		int numRows = lastBlockBrightness.length;
-		int numCols = lastBlockBrightness[0].length;
-		char[][] result = new char[numRows][numCols];
-		SubImgCharMatcher matcher = new SubImgCharMatcher(charset);
-		for (int by = 0; by < numRows; by++) {
+	/**
+	 * Copies a character grid, so that callers never share the cached one.
+	 *
+	 * @param grid The grid to copy
+	 * @return A copy of every row
+	 */
+	private static char[][] copyOf(char[][] grid) {
+		char[][] copy = new char[grid.length][];
+		for (int row = 0; row < grid.length; row++) {
+			copy[row] = grid[row].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Computes the brightness of every block of the grid that
+	 * {@link image.BlockSplitter#splitIntoBlocks(Image, BlockGrid)} would
+	 * produce, using a summed-area table instead of visiting the pixels.
+	 * Blocks reaching past the image count the padding as white.
+	 *
+	 * @param table   The brightness table of the unpadded image
+	 * @param grid    The block grid
+	 * @param workers The pool to split the rows across, or null to compute
+	 *                them on the calling thread
+	 * @return The brightness of each block, indexed [row][column]
+	 */
+	static double[][] computeBlockBrightness(BrightnessTable table, BlockGrid grid,
+			ForkJoinPool workers) {
+		int numCols = grid.getColumns();
+		double[][] brightness = new double[grid.getRows()][numCols];
+		forEachRow(workers, grid.getRows(), numCols, by -> {
+			int top = grid.getTop(by);
+			int blockHeight = grid.getBlockHeight(by);
 			for (int bx = 0; bx < numCols; bx++) {
-				result[by][bx] = matcher.getCharByImageBrightness(lastBlockBrightness[by][bx]);
+				brightness[by][bx] = table.blockBrightness(top, grid.getLeft(bx), blockHeight,
+						grid.getBlockWidth(bx));
+			}
+		});
+		return brightness;
+	}
+
+	/**
+	 * Runs an action for every row of a block grid, either on the calling thread
+	 * or split into row bands on the given pool.
+	 *
+	 * @param workers   The pool to use, or null to run on the calling thread
+	 * @param numRows   The number of rows in the grid
+	 * @param numCols   The number of blocks in each row
+	 * @param rowAction The action to run for each row index
+	 */
+	private static void forEachRow(ForkJoinPool workers, int numRows, int numCols,
+			IntConsumer rowAction) {
+		if (workers == null) {
+			for (int by = 0; by < numRows; by++) {
+				rowAction.accept(by);
 			}
+			return;
 		}
-		return result;
+		int minRows = Math.max(1, MIN_BLOCKS_PER_TASK / Math.max(1, numCols));
+		workers.invoke(new RowBandTask(0, numRows, minRows, rowAction));
 	}
 
 	/**
-	 * Creates a 2D array of Color objects from an Image.
-	 * This method is used to generate a hash of the image for caching purposes.
+	 * Returns the pool for the current parallelism level, creating it on first
+	 * use.
 	 *
-	 * @param image The image to convert to a Color array
-	 * @return A 2D array of Color objects representing the image pixels
+	 * @return The pool, or null when running sequentially
+	 */
+	private static synchronized ForkJoinPool getPool() {
+		if (parallelism == 1) {
+			return null;
+		}
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
+	/**
+	 * The brightness of the block at a row and column of a grid.
+	 */
+	private interface BlockBrightness {
+		double get(int row, int column);
+	}
+
+	/**
+	 * A fork/join task that runs a row action over a band of rows, splitting
+	 * the band in half until it is small enough to run directly.
 	 */
-	private Color[][] buildPixelArray(Image image) {
-		int h = image.getHeight();
-		int w = image.getWidth();
-		Color[][] arr = new Color[h][w];
-		for (int y = 0; y < h; y++) {
-			for (int x = 0; x < w; x++) {
-				arr[y][x] = image.getPixel(y, x);
+	private static class RowBandTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final int minRows;
+		private final IntConsumer rowAction;
+
+		RowBandTask(int from, int to, int minRows, IntConsumer rowAction) {
+			this.from = from;
+			this.to = to;
+			this.minRows = minRows;
+			this.rowAction = rowAction;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= minRows) {
+				for (int row = from; row < to; row++) {
+					rowAction.accept(row);
+				}
+				return;
 			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new RowBandTask(from, middle, minRows, rowAction),
+					new RowBandTask(middle, to, minRows, rowAction));
 		}
-		return arr;
 	}
 }
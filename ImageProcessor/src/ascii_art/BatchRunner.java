@@ -0,0 +1,417 @@
+package ascii_art;
+
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import exceptions.AsciiArtException;
+import exceptions.ImageProcessingException;
+import image.Image;
+import image.StripBrightnessReader;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A non-interactive front end that converts many images with one set of
+ * settings on a bounded pool of worker threads.
+ * Usage: --batch &lt;directory | glob&gt; [--config &lt;file&gt;] [--charset &lt;args&gt;]
+ * [--res &lt;n&gt;] [--round abs|up|down] [--output console|html] [--out &lt;dir&gt;]
+ * [--threads &lt;n&gt;] [--stream true|false] [--subsample &lt;n&gt;]
+ * [--gzip true|false].
+ * The config file is a properties file with the same keys, without the
+ * dashes; flags given on the command line override it. The charset is a list
+ * of shell add arguments separated by spaces or commas, e.g. "0-9,space".
+ * Each image is reported with its load, conversion and output times as soon
+ * as it is done, followed by a throughput summary. HTML pages are written
+ * row by row as the rows are matched (see
+ * {@link AsciiArtAlgorithm#run(ascii_output.RowAsciiOutput)}), so for them
+ * the conversion and output are timed together.
+ * With --stream true images are never loaded whole: block brightness is
+ * summed strip by strip while decoding (see {@link StripBrightnessReader}),
+ * optionally decoding only every n-th pixel, and the load time then includes
+ * the block sums.
+ */
+public class BatchRunner {
+	// Options
+	private static final String OPT_BATCH = "--batch";
+	private static final String OPT_PREFIX = "--";
+	private static final String KEY_CONFIG = "config";
+	private static final String KEY_CHARSET = "charset";
+	private static final String KEY_RES = "res";
+	private static final String KEY_ROUND = "round";
+	private static final String KEY_OUTPUT = "output";
+	private static final String KEY_OUT_DIR = "out";
+	private static final String KEY_THREADS = "threads";
+	private static final String KEY_STREAM = "stream";
+	private static final String KEY_SUBSAMPLE = "subsample";
+	private static final String KEY_GZIP = "gzip";
+
+	// Defaults
+	private static final String DEFAULT_CHARSET = "0-9";
+	private static final String DEFAULT_RES = "2";
+	private static final String DEFAULT_ROUND = "abs";
+	private static final String DEFAULT_OUTPUT = "html";
+	private static final String DEFAULT_OUT_DIR = ".";
+	private static final String DEFAULT_STREAM = "false";
+	private static final String DEFAULT_SUBSAMPLE = "1";
+	private static final String DEFAULT_GZIP = "false";
+
+	// Values
+	private static final String OUTPUT_CONSOLE = "console";
+	private static final String OUTPUT_HTML = "html";
+	private static final String FONT_NAME = "Courier New";
+	private static final String HTML_EXTENSION = ".html";
+	private static final String GZIP_EXTENSION = ".gz";
+	private static final String IMAGE_EXTENSIONS = "glob:*.{jpg,jpeg,png,gif,bmp}";
+	private static final String GLOB_PREFIX = "glob:";
+	private static final double NANOS_PER_MILLI = 1_000_000.0;
+	private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+	private static final double PIXELS_PER_MEGAPIXEL = 1_000_000.0;
+
+	// Messages
+	private static final String USAGE = "Usage: --batch <directory|glob> [--config <file>] " +
+			"[--charset <args>] [--res <n>] [--round abs|up|down] [--output console|html] " +
+			"[--out <dir>] [--threads <n>] [--stream true|false] [--subsample <n>] [--gzip true|false]";
+	private static final String ERROR_PREFIX = "ERROR: ";
+	private static final String ERROR_NO_IMAGES = "No images match ";
+	private static final String ERROR_CHARSET = "Charset is too small. Need at least 2 characters.";
+	private static final String ERROR_RESOLUTION = "Resolution exceeds the image boundaries.";
+
+	private final char[] charset;
+	private final int resolution;
+	private final String roundingMode;
+	private final String outputType;
+	private final Path outDir;
+	private final int threads;
+	private final boolean stream;
+	private final int subsampling;
+	private final boolean gzip;
+
+	/*
+	 * Constructs a runner from validated settings.
+	 */
+	private BatchRunner(Properties settings) {
+		this.charset = parseCharset(settings.getProperty(KEY_CHARSET, DEFAULT_CHARSET));
+		this.resolution = Integer.parseInt(settings.getProperty(KEY_RES, DEFAULT_RES));
+		this.roundingMode = settings.getProperty(KEY_ROUND, DEFAULT_ROUND).toLowerCase(Locale.ROOT);
+		this.outputType = settings.getProperty(KEY_OUTPUT, DEFAULT_OUTPUT);
+		this.outDir = Paths.get(settings.getProperty(KEY_OUT_DIR, DEFAULT_OUT_DIR));
+		this.threads = Integer.parseInt(settings.getProperty(KEY_THREADS,
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		this.stream = Boolean.parseBoolean(settings.getProperty(KEY_STREAM, DEFAULT_STREAM));
+		this.subsampling = Integer.parseInt(settings.getProperty(KEY_SUBSAMPLE, DEFAULT_SUBSAMPLE));
+		this.gzip = Boolean.parseBoolean(settings.getProperty(KEY_GZIP, DEFAULT_GZIP));
+		if (resolution < 1 || threads < 1 || subsampling < 1 ||
+				!(roundingMode.equals("abs") || roundingMode.equals("up") || roundingMode.equals("down")) ||
+				!(outputType.equals(OUTPUT_CONSOLE) || outputType.equals(OUTPUT_HTML))) {
+			throw new IllegalArgumentException("Invalid settings: " + settings);
+		}
+	}
+
+	/**
+	 * Checks whether command line arguments ask for batch mode.
+	 *
+	 * @param args The command line arguments
+	 * @return true if the first argument is --batch
+	 */
+	public static boolean isBatchInvocation(String[] args) {
+		return args.length > 0 && args[0].equals(OPT_BATCH);
+	}
+
+	/**
+	 * Runs batch mode with the given command line arguments.
+	 *
+	 * @param args The command line arguments, starting with --batch
+	 * @return The process exit status: 0 if every image was converted
+	 */
+	public static int run(String[] args) {
+		BatchRunner runner;
+		List<Path> images;
+		try {
+			if (args.length < 2) {
+				throw new IllegalArgumentException("Missing input");
+			}
+			runner = new BatchRunner(parseSettings(args));
+			images = findImages(args[1]);
+		} catch (IllegalArgumentException | IOException e) {
+			System.out.println(ERROR_PREFIX + e.getMessage());
+			System.out.println(USAGE);
+			return 2;
+		}
+		if (images.isEmpty()) {
+			System.out.println(ERROR_PREFIX + ERROR_NO_IMAGES + args[1]);
+			return 2;
+		}
+		if (runner.charset.length < 2) {
+			System.out.println(ERROR_PREFIX + ERROR_CHARSET);
+			return 2;
+		}
+		return runner.convertAll(images);
+	}
+
+	/*
+	 * Parses a list of shell add arguments separated by spaces or commas.
+	 */
+	static char[] parseCharset(String spec) {
+		List<Character> chars = new ArrayList<>();
+		for (String arg : spec.trim().split("[\\s,]+")) {
+			char[] parsed = CharsetParser.parse(arg);
+			if (parsed == null) {
+				throw new IllegalArgumentException("Invalid charset argument: " + arg);
+			}
+			for (char c : parsed)
+				chars.add(c);
+		}
+		char[] charset = new char[chars.size()];
+		for (int i = 0; i < charset.length; i++)
+			charset[i] = chars.get(i);
+		return charset;
+	}
+
+	/*
+	 * Merges the config file, if any, with the flags that follow the input,
+	 * given as "--key value" pairs from args[2] on.
+	 */
+	static Properties parseSettings(String[] args) throws IOException {
+		Properties flags = new Properties();
+		for (int i = 2; i < args.length; i += 2) {
+			if (!args[i].startsWith(OPT_PREFIX) || i + 1 >= args.length) {
+				throw new IllegalArgumentException("Invalid option: " + args[i]);
+			}
+			flags.setProperty(args[i].substring(OPT_PREFIX.length()), args[i + 1]);
+		}
+		Properties settings = new Properties();
+		String config = flags.getProperty(KEY_CONFIG);
+		if (config != null) {
+			try (Reader reader = Files.newBufferedReader(Paths.get(config))) {
+				settings.load(reader);
+			}
+		}
+		settings.putAll(flags);
+		return settings;
+	}
+
+	/*
+	 * Lists the images in a directory, or the files matching a glob whose
+	 * wildcards are all in its last path element, in name order.
+	 */
+	private static List<Path> findImages(String input) throws IOException {
+		Path path = Paths.get(input);
+		Path directory;
+		PathMatcher matcher;
+		if (Files.isDirectory(path)) {
+			directory = path;
+			matcher = FileSystems.getDefault().getPathMatcher(IMAGE_EXTENSIONS);
+		} else {
+			directory = path.getParent() == null ? Paths.get(".") : path.getParent();
+			matcher = FileSystems.getDefault().getPathMatcher(GLOB_PREFIX + path.getFileName());
+		}
+		List<Path> images = new ArrayList<>();
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+			for (Path entry : entries) {
+				Path name = entry.getFileName();
+				if (Files.isRegularFile(entry) &&
+						matcher.matches(Paths.get(name.toString().toLowerCase(Locale.ROOT)))) {
+					images.add(entry);
+				}
+			}
+		}
+		Collections.sort(images);
+		return images;
+	}
+
+	/*
+	 * Converts every image on the worker pool, reporting each one as it
+	 * completes, then prints the summary.
+	 */
+	private int convertAll(List<Path> images) {
+		SubImgCharMatcher matcher = new SubImgCharMatcher(charset, roundingMode);
+		// Warm the matcher up before it is shared between workers
+		matcher.getCharByImageBrightness(0);
+		if (outputType.equals(OUTPUT_HTML)) {
+			try {
+				Files.createDirectories(outDir);
+			} catch (IOException e) {
+				System.out.println(ERROR_PREFIX + e.getMessage());
+				return 2;
+			}
+		}
+		// Images are independent, so parallelism goes across them rather than
+		// inside each conversion
+		int previousParallelism = AsciiArtAlgorithm.getParallelism();
+		AsciiArtAlgorithm.setParallelism(1);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<Result> results = new ExecutorCompletionService<>(pool);
+		long start = System.nanoTime();
+		int failed = 0;
+		long pixels = 0;
+		try {
+			for (Path image : images) {
+				results.submit(() -> convert(image, matcher));
+			}
+			for (int i = 0; i < images.size(); i++) {
+				Result result;
+				try {
+					result = results.take().get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (ExecutionException e) {
+					throw new AsciiArtException("Batch worker failed", e.getCause());
+				}
+				System.out.println(result);
+				if (result.error != null) {
+					failed++;
+				} else {
+					pixels += result.pixels;
+				}
+			}
+		} finally {
+			// Idle pool threads would otherwise keep the JVM alive
+			pool.shutdownNow();
+			AsciiArtAlgorithm.setParallelism(previousParallelism);
+		}
+		double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+		System.out.printf("%d images, %d failed, %.2f s, %.1f images/s, %.1f megapixels/s%n",
+				images.size(), failed, seconds, (images.size() - failed) / seconds,
+				pixels / PIXELS_PER_MEGAPIXEL / seconds);
+		return failed == 0 ? 0 : 1;
+	}
+
+	/*
+	 * Loads, converts and outputs one image, timing each stage.
+	 */
+	private Result convert(Path path, SubImgCharMatcher matcher) {
+		Result result = new Result(path);
+		try {
+			long t0 = System.nanoTime();
+			int width;
+			int height;
+			double[][] brightness = null;
+			Image image = null;
+			if (stream) {
+				try (StripBrightnessReader reader = new StripBrightnessReader(path.toString())) {
+					width = reader.getWidth();
+					height = reader.getHeight();
+					if (resolution > width) {
+						throw new ImageProcessingException(ERROR_RESOLUTION);
+					}
+					brightness = reader.readBlockBrightness(resolution, subsampling);
+				} catch (IOException e) {
+					throw new ImageProcessingException("Failed to load image: " + e.getMessage(), e);
+				}
+			} else {
+				try {
+					image = new Image(path.toString());
+				} catch (IOException e) {
+					throw new ImageProcessingException("Failed to load image: " + e.getMessage(), e);
+				}
+				width = image.getWidth();
+				height = image.getHeight();
+				if (resolution > width) {
+					throw new ImageProcessingException(ERROR_RESOLUTION);
+				}
+			}
+			long t1 = System.nanoTime();
+			long t2;
+			if (outputType.equals(OUTPUT_HTML)) {
+				String name = path.getFileName() + HTML_EXTENSION + (gzip ? GZIP_EXTENSION : "");
+				HtmlAsciiOutput page = new HtmlAsciiOutput(outDir.resolve(name).toString(), FONT_NAME);
+				try {
+					if (stream) {
+						AsciiArtAlgorithm.convertBrightness(brightness, matcher, page);
+					} else {
+						new AsciiArtAlgorithm(image, resolution, matcher, resolution).run(page);
+					}
+				} catch (IOException e) {
+					throw new ImageProcessingException("Failed to write " + name + ": " + e.getMessage(), e);
+				}
+				t2 = System.nanoTime();
+				result.streamed = true;
+			} else {
+				char[][] chars = stream ? AsciiArtAlgorithm.convertBrightness(brightness, matcher) :
+						new AsciiArtAlgorithm(image, resolution, matcher, resolution).run();
+				t2 = System.nanoTime();
+				synchronized (System.out) {
+					System.out.println(path);
+					new ConsoleAsciiOutput().out(chars);
+				}
+			}
+			if (image != null) {
+				image.releaseBrightnessTable();
+			}
+			long t3 = System.nanoTime();
+			result.width = width;
+			result.height = height;
+			result.pixels = (long) width * height;
+			result.loadNanos = t1 - t0;
+			result.convertNanos = t2 - t1;
+			result.outputNanos = t3 - t2;
+		} catch (AsciiArtException e) {
+			result.error = e.getMessage();
+		} catch (RuntimeException e) {
+			// A malformed file can make a decoder throw anything; fail only this image
+			result.error = e.toString();
+		}
+		return result;
+	}
+
+	/**
+	 * Runs batch mode as a program of its own.
+	 *
+	 * @param args The command line arguments, starting with --batch
+	 */
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	/*
+	 * The outcome and stage timings of one image.
+	 */
+	private static class Result {
+		private final Path path;
+		private String error;
+		private int width;
+		private int height;
+		private long pixels;
+		private long loadNanos;
+		private long convertNanos;
+		private long outputNanos;
+		/** Whether the output was written during the conversion */
+		private boolean streamed;
+
+		Result(Path path) {
+			this.path = path;
+		}
+
+		@Override
+		public String toString() {
+			if (error != null) {
+				return String.format("FAIL %s: %s", path, error);
+			}
+			if (streamed) {
+				return String.format("OK   %s %dx%d load %.1f ms, convert and output %.1f ms",
+						path, width, height, loadNanos / NANOS_PER_MILLI, convertNanos / NANOS_PER_MILLI);
+			}
+			return String.format("OK   %s %dx%d load %.1f ms, convert %.1f ms, output %.1f ms",
+					path, width, height, loadNanos / NANOS_PER_MILLI,
+					convertNanos / NANOS_PER_MILLI, outputNanos / NANOS_PER_MILLI);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package ascii_art;
+
+/**
+ * Parses the charset arguments understood by the shell's add and remove
+ * commands, so that other front ends accept exactly the same syntax:
+ * "all" (every printable ASCII character), "space", a named preset such as
+ * "braille", a single character, a code point such as "U+2588", or a range
+ * between two of these, such as "a-z" or "U+2800-U+28FF".
+ * Characters are kept as chars throughout the pipeline, so code points
+ * outside the Basic Multilingual Plane are rejected. Surrogates are not
+ * characters on their own: they are rejected as a single character or range
+ * end, and skipped inside a range.
+ */
+public class CharsetParser {
+	private static final String ARG_ALL = "all";
+	private static final String ARG_SPACE = "space";
+	private static final char FIRST_PRINTABLE = 32;
+	private static final char LAST_PRINTABLE = 126;
+	private static final String CODE_POINT_PREFIX = "U+";
+	private static final char RANGE_SEPARATOR = '-';
+
+	/** Preset names and the ranges of characters they stand for, in ascending order */
+	private static final String[] PRESET_NAMES = {"blocks", "shades", "braille"};
+	private static final char[][][] PRESET_RANGES = {
+			{{'\u2580', '\u259F'}},
+			{{' ', ' '}, {'\u2588', '\u2588'}, {'\u2591', '\u2593'}},
+			{{'\u2800', '\u28FF'}},
+	};
+
+	/**
+	 * Returns the characters named by one charset argument.
+	 *
+	 * @param arg The argument, e.g. "all", "space", "blocks", "x", "a-z" or
+	 *            "U+2800-U+28FF"
+	 * @return The characters, in ascending order, or null if the argument is
+	 *         not in a valid format
+	 */
+	public static char[] parse(String arg) {
+		if (arg.equals(ARG_ALL)) {
+			return range(FIRST_PRINTABLE, LAST_PRINTABLE);
+		} else if (arg.equals(ARG_SPACE)) {
+			return new char[] {' '};
+		}
+		char[] preset = preset(arg);
+		if (preset != null) {
+			return preset;
+		}
+		int single = parseCodePoint(arg);
+		if (single >= 0) {
+			return new char[] {(char) single};
+		}
+		// The separator may itself be an end of the range, as in "--z"
+		for (int i = 1; i < arg.length() - 1; i++) {
+			if (arg.charAt(i) != RANGE_SEPARATOR) {
+				continue;
+			}
+			int first = parseCodePoint(arg.substring(0, i));
+			int last = parseCodePoint(arg.substring(i + 1));
+			if (first >= 0 && last >= 0) {
+				return range((char) Math.min(first, last), (char) Math.max(first, last));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the names of the presets, in the order they are documented.
+	 *
+	 * @return The preset names
+	 */
+	public static String[] getPresetNames() {
+		return PRESET_NAMES.clone();
+	}
+
+	/*
+	 * Returns the characters of a named preset, or null if there is none by
+	 * that name.
+	 */
+	private static char[] preset(String name) {
+		for (int p = 0; p < PRESET_NAMES.length; p++) {
+			if (!PRESET_NAMES[p].equals(name)) {
+				continue;
+			}
+			StringBuilder chars = new StringBuilder();
+			for (char[] bounds : PRESET_RANGES[p]) {
+				chars.append(range(bounds[0], bounds[1]));
+			}
+			return chars.toString().toCharArray();
+		}
+		return null;
+	}
+
+	/*
+	 * Parses one character, given literally or as "U+" and 1 to 6 hex digits.
+	 * Returns -1 if the text is neither, or names a code point that is not a
+	 * single char.
+	 */
+	private static int parseCodePoint(String text) {
+		int codePoint;
+		if (text.length() > CODE_POINT_PREFIX.length() &&
+				text.regionMatches(true, 0, CODE_POINT_PREFIX, 0, CODE_POINT_PREFIX.length())) {
+			String digits = text.substring(CODE_POINT_PREFIX.length());
+			if (digits.length() > 6) {
+				return -1;
+			}
+			codePoint = 0;
+			for (int i = 0; i < digits.length(); i++) {
+				int digit = Character.digit(digits.charAt(i), 16);
+				if (digit < 0) {
+					return -1;
+				}
+				codePoint = codePoint * 16 + digit;
+			}
+		} else if (text.length() == 1) {
+			codePoint = text.charAt(0);
+		} else {
+			return -1;
+		}
+		if (!Character.isBmpCodePoint(codePoint) || Character.isSurrogate((char) codePoint)) {
+			return -1;
+		}
+		return codePoint;
+	}
+
+	/*
+	 * Returns every character from start to end, inclusive, except the
+	 * surrogates between them.
+	 */
+	private static char[] range(char start, char end) {
+		int surrogates = Math.max(0, Math.min(end, Character.MAX_SURROGATE) -
+				Math.max(start, Character.MIN_SURROGATE) + 1);
+		char[] chars = new char[end - start + 1 - surrogates];
+		int count = 0;
+		for (int c = start; c <= end; c++) {
+			if (!Character.isSurrogate((char) c)) {
+				chars[count++] = (char) c;
+			}
+		}
+		return chars;
+	}
+}
@@ -0,0 +1,641 @@
+package ascii_art;
+
+import ascii_output.HtmlAsciiOutput;
+import exceptions.AsciiArtException;
+import image.BlockGrid;
+import image.Image;
+import image_char_matching.SubImgCharMatcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A headless front end that serves conversions over HTTP, on the loopback
+ * interface only.
+ * Usage: --serve &lt;port&gt; [--config &lt;file&gt;] [--concurrency &lt;n&gt;]
+ * [--wait &lt;ms&gt;] [--max-upload &lt;bytes&gt;].
+ * Settings are read as in batch mode (see {@link BatchRunner}); port 0 picks
+ * a free port, which is printed.
+ * POST /convert takes the image as the request body and the query
+ * parameters charset (shell add arguments separated by commas, default
+ * "0-9"), res (characters per row of an aspect-correct grid, default 64),
+ * round (abs, up or down) and output (text or html), and returns the art.
+ * GET /metrics returns the request counters, histograms of the time spent
+ * waiting for a conversion slot and of the time to serve, the result cache
+ * counters and the pipeline stage counters.
+ * At most concurrency conversions run at once. A request that cannot get a
+ * slot within the wait time is refused with 503 and a Retry-After header
+ * before its body is read, so a flood of uploads is turned away instead of
+ * queued. Requests run on virtual threads where the JVM has them, and on a
+ * cached thread pool otherwise; either way the slots, not the threads, bound
+ * the work.
+ * Every request shares the glyph brightness cache, the result cache of
+ * {@link AsciiArtAlgorithm} and a matcher per charset and rounding mode, so
+ * repeated uploads of the same image are served from the cache. Each matcher
+ * has its own rounding mode (see
+ * {@link SubImgCharMatcher#SubImgCharMatcher(char[], String)}), so requests
+ * with different modes never affect each other.
+ */
+public class ConversionServer {
+	// Options
+	private static final String OPT_SERVE = "--serve";
+	private static final String KEY_CONCURRENCY = "concurrency";
+	private static final String KEY_WAIT = "wait";
+	private static final String KEY_MAX_UPLOAD = "max-upload";
+
+	// Defaults
+	private static final String DEFAULT_WAIT = "100";
+	private static final String DEFAULT_MAX_UPLOAD = String.valueOf(32 * 1024 * 1024);
+	private static final String DEFAULT_CHARSET = "0-9";
+	private static final String DEFAULT_RES = "64";
+	private static final String DEFAULT_ROUND = "abs";
+	private static final String DEFAULT_OUTPUT = "text";
+
+	// Request parameters and values
+	private static final String PARAM_CHARSET = "charset";
+	private static final String PARAM_RES = "res";
+	private static final String PARAM_ROUND = "round";
+	private static final String PARAM_OUTPUT = "output";
+	private static final String OUTPUT_TEXT = "text";
+	private static final String OUTPUT_HTML = "html";
+	private static final String PATH_CONVERT = "/convert";
+	private static final String PATH_METRICS = "/metrics";
+	private static final String METHOD_GET = "GET";
+	private static final String METHOD_POST = "POST";
+	private static final String TYPE_TEXT = "text/plain; charset=utf-8";
+	private static final String TYPE_HTML = "text/html; charset=utf-8";
+	private static final String FONT_NAME = "Courier New";
+
+	// Status codes
+	private static final int STATUS_OK = 200;
+	private static final int STATUS_BAD_REQUEST = 400;
+	private static final int STATUS_NOT_FOUND = 404;
+	private static final int STATUS_BAD_METHOD = 405;
+	private static final int STATUS_TOO_LARGE = 413;
+	private static final int STATUS_ERROR = 500;
+	private static final int STATUS_BUSY = 503;
+
+	// Limits
+	/** Largest decoded image accepted, checked before its pixels are decoded */
+	private static final long MAX_PIXELS = 32L * 1024 * 1024;
+	/** Matchers kept; the least recently used one is dropped to make room */
+	private static final int MAX_MATCHERS = 64;
+	private static final int BUFFER_BYTES = 64 * 1024;
+	private static final String RETRY_AFTER_SECONDS = "1";
+
+	// Messages
+	private static final String USAGE = "Usage: --serve <port> [--config <file>] " +
+			"[--concurrency <n>] [--wait <ms>] [--max-upload <bytes>]";
+	private static final String ERROR_PREFIX = "ERROR: ";
+	private static final String ERROR_CHARSET = "Charset is too small. Need at least 2 characters.";
+	private static final String ERROR_RESOLUTION = "Resolution exceeds the image boundaries.";
+	private static final String ERROR_FORMAT = "Unsupported image format.";
+	private static final String ERROR_IMAGE_SIZE = "Image has too many pixels.";
+	private static final String ERROR_UPLOAD_SIZE = "Upload is too large.";
+	private static final String ERROR_BUSY = "Server is busy, try again later.";
+	private static final String ERROR_METHOD = "Method not allowed.";
+	private static final String ERROR_NOT_FOUND = "Not found.";
+	private static final String LISTENING = "Listening on http://%s:%d/ with %d conversion slots (%s)%n";
+
+	private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+	private final int concurrency;
+	private final long waitMillis;
+	private final int maxUpload;
+	private final Semaphore slots;
+	/** Matchers by rounding mode and charset in access order, guarded by itself */
+	private final LinkedHashMap<String, SubImgCharMatcher> matchers = new LinkedHashMap<>(16, 0.75f, true);
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong served = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final Histogram waitTimes = new Histogram();
+	private final Histogram serviceTimes = new Histogram();
+	private HttpServer server;
+	private ExecutorService executor;
+	private String executorKind;
+	/** The conversion parallelism before start, restored by stop */
+	private int previousParallelism;
+
+	/**
+	 * Constructs a server that is not started yet.
+	 *
+	 * @param concurrency The number of conversions allowed to run at once
+	 * @param waitMillis  How long a request may wait for a conversion slot
+	 *                    before it is refused
+	 * @param maxUpload   The largest image upload accepted, in bytes
+	 * @throws IllegalArgumentException if a setting is out of range
+	 */
+	public ConversionServer(int concurrency, long waitMillis, int maxUpload) {
+		if (concurrency < 1 || waitMillis < 0 || maxUpload < 1) {
+			throw new IllegalArgumentException("Invalid server settings: concurrency " +
+					concurrency + ", wait " + waitMillis + ", max upload " + maxUpload);
+		}
+		this.concurrency = concurrency;
+		this.waitMillis = waitMillis;
+		this.maxUpload = maxUpload;
+		this.slots = new Semaphore(concurrency);
+	}
+
+	/**
+	 * Checks whether command line arguments ask for server mode.
+	 *
+	 * @param args The command line arguments
+	 * @return true if the first argument is --serve
+	 */
+	public static boolean isServeInvocation(String[] args) {
+		return args.length > 0 && args[0].equals(OPT_SERVE);
+	}
+
+	/**
+	 * Runs server mode with the given command line arguments, until the
+	 * process is stopped.
+	 *
+	 * @param args The command line arguments, starting with --serve
+	 * @return The process exit status if the server could not be started
+	 */
+	public static int run(String[] args) {
+		ConversionServer conversionServer;
+		int port;
+		try {
+			if (args.length < 2) {
+				throw new IllegalArgumentException("Missing port");
+			}
+			port = Integer.parseInt(args[1]);
+			Properties settings = BatchRunner.parseSettings(args);
+			conversionServer = new ConversionServer(
+					Integer.parseInt(settings.getProperty(KEY_CONCURRENCY,
+							String.valueOf(Runtime.getRuntime().availableProcessors()))),
+					Long.parseLong(settings.getProperty(KEY_WAIT, DEFAULT_WAIT)),
+					Integer.parseInt(settings.getProperty(KEY_MAX_UPLOAD, DEFAULT_MAX_UPLOAD)));
+			conversionServer.start(port);
+		} catch (IllegalArgumentException | IOException e) {
+			System.out.println(ERROR_PREFIX + e.getMessage());
+			System.out.println(USAGE);
+			return 2;
+		}
+		System.out.printf(LISTENING, conversionServer.getAddress().getHostString(),
+				conversionServer.getAddress().getPort(), conversionServer.concurrency,
+				conversionServer.executorKind);
+		return 0;
+	}
+
+	/**
+	 * Starts serving on the loopback interface. Requests are independent, so
+	 * parallelism goes across them rather than inside each conversion, as in
+	 * batch mode: the conversion parallelism is set to 1 until {@link #stop}.
+	 *
+	 * @param port The port, or 0 for any free port
+	 * @throws IOException if the port cannot be bound
+	 */
+	public synchronized void start(int port) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Server already started");
+		}
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		previousParallelism = AsciiArtAlgorithm.getParallelism();
+		AsciiArtAlgorithm.setParallelism(1);
+		executor = newRequestExecutor();
+		server.setExecutor(executor);
+		server.createContext(PATH_CONVERT, this::handleConvert);
+		server.createContext(PATH_METRICS, this::handleMetrics);
+		server.start();
+	}
+
+	/**
+	 * Stops serving, giving requests in progress up to the given time to
+	 * finish, and restores the conversion parallelism.
+	 *
+	 * @param delaySeconds The most seconds to wait for requests in progress
+	 */
+	public synchronized void stop(int delaySeconds) {
+		if (server == null) {
+			return;
+		}
+		server.stop(delaySeconds);
+		executor.shutdown();
+		server = null;
+		executor = null;
+		AsciiArtAlgorithm.setParallelism(previousParallelism);
+	}
+
+	/**
+	 * Returns the address the server is bound to.
+	 *
+	 * @return The address, with the actual port if 0 was asked for
+	 * @throws IllegalStateException if the server is not started
+	 */
+	public synchronized InetSocketAddress getAddress() {
+		if (server == null) {
+			throw new IllegalStateException("Server not started");
+		}
+		return server.getAddress();
+	}
+
+	/**
+	 * Returns the request counters and histograms, the result cache counters
+	 * and the pipeline stage counters, as served on /metrics.
+	 *
+	 * @return The metrics, one item per line
+	 */
+	public String getMetrics() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("executor %s%n", executorKind));
+		text.append(String.format("concurrency %d%n", concurrency));
+		text.append(String.format("in_flight %d%n", inFlight.get()));
+		text.append(String.format("available_slots %d%n", slots.availablePermits()));
+		text.append(String.format("served %d%n", served.get()));
+		text.append(String.format("rejected %d%n", rejected.get()));
+		text.append(String.format("failed %d%n", failed.get()));
+		synchronized (matchers) {
+			text.append(String.format("matchers %d%n", matchers.size()));
+		}
+		text.append(String.format("cache %s%n", AsciiArtAlgorithm.getCache()));
+		text.append(waitTimes.format("wait"));
+		text.append(serviceTimes.format("service"));
+		text.append(AsciiArtAlgorithm.getStats());
+		return text.toString();
+	}
+
+	/*
+	 * Serves POST /convert: waits for a slot, reads and decodes the upload,
+	 * converts it and writes the art.
+	 */
+	private void handleConvert(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			if (!exchange.getRequestURI().getPath().equals(PATH_CONVERT)) {
+				sendText(exchange, STATUS_NOT_FOUND, ERROR_NOT_FOUND);
+				return;
+			}
+			if (!exchange.getRequestMethod().equals(METHOD_POST)) {
+				exchange.getResponseHeaders().set("Allow", METHOD_POST);
+				sendText(exchange, STATUS_BAD_METHOD, ERROR_METHOD);
+				return;
+			}
+			Request request;
+			try {
+				request = parseRequest(exchange.getRequestURI().getRawQuery());
+			} catch (IllegalArgumentException e) {
+				failed.incrementAndGet();
+				sendText(exchange, STATUS_BAD_REQUEST, e.getMessage());
+				return;
+			}
+			long start = System.nanoTime();
+			boolean acquired;
+			try {
+				acquired = slots.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				// Refuse the request rather than drop the connection, and only then
+				// restore the flag, which would close an interruptible channel
+				rejected.incrementAndGet();
+				exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+				try {
+					sendText(exchange, STATUS_BUSY, ERROR_BUSY);
+				} finally {
+					Thread.currentThread().interrupt();
+				}
+				return;
+			}
+			long admitted = System.nanoTime();
+			waitTimes.record(admitted - start);
+			if (!acquired) {
+				rejected.incrementAndGet();
+				exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+				sendText(exchange, STATUS_BUSY, ERROR_BUSY);
+				return;
+			}
+			inFlight.incrementAndGet();
+			try {
+				serve(exchange, request);
+			} finally {
+				inFlight.decrementAndGet();
+				slots.release();
+				serviceTimes.record(System.nanoTime() - admitted);
+			}
+		}
+	}
+
+	/*
+	 * Converts the upload of an admitted request and writes the response,
+	 * counting the outcome.
+	 */
+	private void serve(HttpExchange exchange, Request request) throws IOException {
+		int status = STATUS_OK;
+		String error = null;
+		try {
+			byte[] upload = readUpload(exchange.getRequestBody());
+			if (upload == null) {
+				status = STATUS_TOO_LARGE;
+				error = ERROR_UPLOAD_SIZE;
+			} else {
+				Image image = decode(upload);
+				if (request.resolution > image.getWidth()) {
+					throw new IllegalArgumentException(ERROR_RESOLUTION);
+				}
+				BlockGrid grid = BlockGrid.fitted(image.getWidth(), image.getHeight(),
+						request.resolution);
+				char[][] chars = new AsciiArtAlgorithm(image, grid, getMatcher(request)).run();
+				// Nothing converts this upload again, so drop its table before writing
+				image.releaseBrightnessTable();
+				writeArt(exchange, chars, request.output);
+				served.incrementAndGet();
+				return;
+			}
+		} catch (IllegalArgumentException | AsciiArtException e) {
+			status = STATUS_BAD_REQUEST;
+			error = e.getMessage();
+		} catch (RuntimeException e) {
+			status = STATUS_ERROR;
+			error = e.toString();
+		}
+		failed.incrementAndGet();
+		sendText(exchange, status, error);
+	}
+
+	/*
+	 * Serves GET /metrics.
+	 */
+	private void handleMetrics(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			if (!exchange.getRequestURI().getPath().equals(PATH_METRICS)) {
+				sendText(exchange, STATUS_NOT_FOUND, ERROR_NOT_FOUND);
+			} else if (!exchange.getRequestMethod().equals(METHOD_GET)) {
+				exchange.getResponseHeaders().set("Allow", METHOD_GET);
+				sendText(exchange, STATUS_BAD_METHOD, ERROR_METHOD);
+			} else {
+				sendText(exchange, STATUS_OK, getMetrics());
+			}
+		}
+	}
+
+	/*
+	 * Parses and validates the query parameters of a conversion.
+	 */
+	private static Request parseRequest(String query) {
+		Map<String, String> params = new HashMap<>();
+		if (query != null && !query.isEmpty()) {
+			for (String pair : query.split("&")) {
+				int equals = pair.indexOf('=');
+				String name = equals < 0 ? pair : pair.substring(0, equals);
+				String value = equals < 0 ? "" : pair.substring(equals + 1);
+				params.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+						URLDecoder.decode(value, StandardCharsets.UTF_8));
+			}
+		}
+		char[] charset = BatchRunner.parseCharset(params.getOrDefault(PARAM_CHARSET, DEFAULT_CHARSET));
+		if (charset.length < 2) {
+			throw new IllegalArgumentException(ERROR_CHARSET);
+		}
+		int resolution;
+		try {
+			resolution = Integer.parseInt(params.getOrDefault(PARAM_RES, DEFAULT_RES));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid resolution: " + params.get(PARAM_RES));
+		}
+		if (resolution < 1) {
+			throw new IllegalArgumentException("Invalid resolution: " + resolution);
+		}
+		String round = params.getOrDefault(PARAM_ROUND, DEFAULT_ROUND).toLowerCase(Locale.ROOT);
+		if (!(round.equals("abs") || round.equals("up") || round.equals("down"))) {
+			throw new IllegalArgumentException("Invalid rounding mode: " + round);
+		}
+		String output = params.getOrDefault(PARAM_OUTPUT, DEFAULT_OUTPUT);
+		if (!(output.equals(OUTPUT_TEXT) || output.equals(OUTPUT_HTML))) {
+			throw new IllegalArgumentException("Invalid output: " + output);
+		}
+		return new Request(charset, resolution, round, output);
+	}
+
+	/*
+	 * Returns the shared matcher for the charset and rounding mode of a
+	 * request, building and warming it up on first use.
+	 */
+	private SubImgCharMatcher getMatcher(Request request) {
+		char[] sorted = request.charset.clone();
+		Arrays.sort(sorted);
+		StringBuilder key = new StringBuilder(request.roundingMode).append(':');
+		for (int i = 0; i < sorted.length; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1]) {
+				key.append(sorted[i]);
+			}
+		}
+		SubImgCharMatcher matcher;
+		synchronized (matchers) {
+			matcher = matchers.get(key.toString());
+		}
+		if (matcher != null) {
+			return matcher;
+		}
+		matcher = new SubImgCharMatcher(request.charset, request.roundingMode);
+		// Compile the lookup before the matcher is shared between requests
+		matcher.getCharByImageBrightness(0);
+		synchronized (matchers) {
+			SubImgCharMatcher raced = matchers.get(key.toString());
+			if (raced != null) {
+				return raced;
+			}
+			if (matchers.size() >= MAX_MATCHERS) {
+				Iterator<SubImgCharMatcher> eldest = matchers.values().iterator();
+				eldest.next();
+				eldest.remove();
+			}
+			matchers.put(key.toString(), matcher);
+		}
+		return matcher;
+	}
+
+	/*
+	 * Reads a request body, or returns null if it is larger than allowed.
+	 */
+	private byte[] readUpload(InputStream body) throws IOException {
+		ByteArrayOutputStream upload = new ByteArrayOutputStream();
+		byte[] buffer = new byte[BUFFER_BYTES];
+		int read;
+		while ((read = body.read(buffer)) > 0) {
+			if (upload.size() + read > maxUpload) {
+				return null;
+			}
+			upload.write(buffer, 0, read);
+		}
+		return upload.toByteArray();
+	}
+
+	/*
+	 * Decodes an uploaded image, refusing it from its header if it has too
+	 * many pixels to hold.
+	 */
+	private static Image decode(byte[] upload) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(upload))) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				throw new IllegalArgumentException(ERROR_FORMAT);
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				if ((long) reader.getWidth(0) * reader.getHeight(0) > MAX_PIXELS) {
+					throw new IllegalArgumentException(ERROR_IMAGE_SIZE);
+				}
+				return new Image(reader.read(0));
+			} catch (IOException e) {
+				throw new IllegalArgumentException(ERROR_FORMAT + " " + e.getMessage(), e);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/*
+	 * Writes the art as plain text, one row per line, or as an HTML page.
+	 */
+	private static void writeArt(HttpExchange exchange, char[][] chars, String output)
+			throws IOException {
+		boolean html = output.equals(OUTPUT_HTML);
+		exchange.getResponseHeaders().set("Content-Type", html ? TYPE_HTML : TYPE_TEXT);
+		exchange.sendResponseHeaders(STATUS_OK, 0);
+		if (html) {
+			HtmlAsciiOutput page = new HtmlAsciiOutput(exchange.getResponseBody(), FONT_NAME);
+			page.begin(chars[0].length);
+			try {
+				for (char[] row : chars) {
+					page.writeRow(row);
+				}
+			} finally {
+				page.end();
+			}
+			return;
+		}
+		try (Writer text = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+			for (char[] row : chars) {
+				text.write(row);
+				text.write('\n');
+			}
+		}
+	}
+
+	/*
+	 * Sends a plain text response with a known length.
+	 */
+	private static void sendText(HttpExchange exchange, int status, String message)
+			throws IOException {
+		byte[] body = (message.endsWith("\n") ? message : message + "\n")
+				.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", TYPE_TEXT);
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/*
+	 * Returns an executor that runs every request on a new virtual thread, or
+	 * a cached thread pool where virtual threads are not available. It is
+	 * looked up by reflection so the sources still build for Java 17.
+	 */
+	private ExecutorService newRequestExecutor() {
+		try {
+			ExecutorService virtual = (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			executorKind = "virtual threads";
+			return virtual;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			executorKind = "cached thread pool";
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Runs server mode as a program of its own.
+	 *
+	 * @param args The command line arguments, starting with --serve
+	 */
+	public static void main(String[] args) {
+		int status = run(args);
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+
+	/*
+	 * The validated parameters of one conversion.
+	 */
+	private static class Request {
+		private final char[] charset;
+		private final int resolution;
+		private final String roundingMode;
+		private final String output;
+
+		Request(char[] charset, int resolution, String roundingMode, String output) {
+			this.charset = charset;
+			this.resolution = resolution;
+			this.roundingMode = roundingMode;
+			this.output = output;
+		}
+	}
+
+	/*
+	 * A histogram of durations in power-of-two millisecond buckets, from
+	 * under 1 ms to 4 s and over. All methods are thread safe.
+	 */
+	private static class Histogram {
+		private static final int BUCKETS = 14;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		private final AtomicLong totalNanos = new AtomicLong();
+
+		void record(long nanos) {
+			long millis = nanos / 1_000_000;
+			int bucket = millis == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+			counts.incrementAndGet(bucket);
+			totalNanos.addAndGet(nanos);
+		}
+
+		/*
+		 * Formats the histogram as a line with the count and mean, then one
+		 * line per bucket with its exclusive upper bound and count.
+		 */
+		String format(String name) {
+			StringBuilder text = new StringBuilder();
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				count += counts.get(i);
+			}
+			text.append(String.format("%s_count %d mean_ms %.3f%n", name, count,
+					count == 0 ? 0 : totalNanos.get() / NANOS_PER_MILLI / count));
+			for (int i = 0; i < BUCKETS; i++) {
+				String bound = i == BUCKETS - 1 ? "+inf" : String.valueOf(1L << i);
+				text.append(String.format("%s_ms{lt=%s} %d%n", name, bound, counts.get(i)));
+			}
+			return text.toString();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package ascii_art;
+
+import image.BlockGrid;
+import image.BrightnessTable;
+import image.Frame;
+import image.LuminanceKernel;
+import image_char_matching.SubImgCharMatcher;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Converts the frames of a sequence to ASCII art, reusing the work done for
+ * the previous frame.
+ * Each block is compared with the same block of the previous frame, row
+ * segment by row segment, and only blocks whose pixels differ are summed and
+ * matched again; the others keep their previous brightness and character.
+ * Blocks outside the region a frame reports as changed are not even compared.
+ * The block grid and the brightness values are the same as those of
+ * {@link AsciiArtAlgorithm} on each frame as a still image.
+ */
+public class FrameConverter {
+	private final int charsInRow;
+	private final SubImgCharMatcher matcher;
+
+	// State of the previous frame
+	private int[] previous;
+	private int width;
+	private int height;
+	private char[][] chars;
+
+	// The padded grid over the current frame size
+	private BlockGrid grid;
+
+	private long blocksMatched = 0;
+	private long blocksReused = 0;
+
+	/**
+	 * Constructs a converter for one frame sequence.
+	 *
+	 * @param charsInRow The number of characters to use per row in the output
+	 * @param matcher    The matcher holding the charset to use; it must not
+	 *                   change while the sequence is converted
+	 */
+	public FrameConverter(int charsInRow, SubImgCharMatcher matcher) {
+		this.charsInRow = charsInRow;
+		this.matcher = matcher;
+	}
+
+	/**
+	 * Converts the next frame of the sequence.
+	 *
+	 * @param frame The frame
+	 * @return A new 2D array of characters representing the frame
+	 */
+	public char[][] convert(Frame frame) {
+		int[] pixels = frame.getPixels();
+		Rectangle changed = frame.getChangedRegion();
+		if (previous == null || frame.getWidth() != width || frame.getHeight() != height) {
+			resize(frame.getWidth(), frame.getHeight());
+			changed = null;
+		}
+		for (int by = 0; by < charsInRow; by++) {
+			for (int bx = 0; bx < charsInRow; bx++) {
+				int top = Math.max(0, grid.getTop(by));
+				int bottom = Math.min(height, grid.getTop(by) + grid.getBlockHeight(by));
+				int left = Math.max(0, grid.getLeft(bx));
+				int right = Math.min(width, grid.getLeft(bx) + grid.getBlockWidth(bx));
+				boolean dirty = previous == null || (top < bottom && left < right &&
+						(changed == null || changed.intersects(left, top, right - left, bottom - top)) &&
+						differs(pixels, top, bottom, left, right));
+				if (dirty) {
+					chars[by][bx] = matcher.getCharByImageBrightness(
+							brightness(pixels, top, bottom, left, right));
+					blocksMatched++;
+				} else {
+					blocksReused++;
+				}
+			}
+		}
+		previous = pixels;
+		char[][] copy = new char[charsInRow][];
+		for (int by = 0; by < charsInRow; by++) {
+			copy[by] = chars[by].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns the number of blocks summed and matched so far.
+	 *
+	 * @return The count
+	 */
+	public long getBlocksMatched() {
+		return blocksMatched;
+	}
+
+	/**
+	 * Returns the number of blocks taken unchanged from the previous frame.
+	 *
+	 * @return The count
+	 */
+	public long getBlocksReused() {
+		return blocksReused;
+	}
+
+	/*
+	 * Sets up the grid for a new frame size and forgets the previous frame.
+	 */
+	private void resize(int newWidth, int newHeight) {
+		width = newWidth;
+		height = newHeight;
+		grid = BlockGrid.padded(width, height, charsInRow);
+		chars = new char[charsInRow][charsInRow];
+		previous = null;
+	}
+
+	/*
+	 * Checks whether a block's pixels differ from the previous frame's.
+	 */
+	private boolean differs(int[] pixels, int top, int bottom, int left, int right) {
+		for (int y = top; y < bottom; y++) {
+			int start = y * width;
+			if (!Arrays.equals(pixels, start + left, start + right,
+					previous, start + left, start + right)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Computes the brightness of a block from its pixels, counting the part of
+	 * the block outside the frame as white, exactly as the brightness table
+	 * does.
+	 */
+	private double brightness(int[] pixels, int top, int bottom, int left, int right) {
+		long area = (long) grid.getBlockWidth(0) * grid.getBlockHeight(0);
+		long inside = (long) Math.max(0, bottom - top) * Math.max(0, right - left);
+		long sum = (area - inside) * BrightnessTable.WHITE_LUMINANCE;
+		for (int y = top; y < bottom; y++) {
+			sum += LuminanceKernel.sum(pixels, y * width + left, Math.max(0, right - left));
+		}
+		return BrightnessTable.toBrightness(sum, area);
+	}
+}
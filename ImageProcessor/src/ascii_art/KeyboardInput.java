@@ -0,0 +1,37 @@
+package ascii_art;
+
+import java.util.Scanner;
+
+/**
+ * Reads lines typed by the user, through one Scanner shared by the whole
+ * program.
+ */
+class KeyboardInput {
+    private static KeyboardInput keyboardInputObject = null;
+    private Scanner scanner;
+
+    private KeyboardInput() {
+        this.scanner = new Scanner(System.in);
+    }
+
+    /**
+     * Returns the single instance, creating it on first use.
+     *
+     * @return The instance
+     */
+    public static KeyboardInput getObject() {
+        if (KeyboardInput.keyboardInputObject == null) {
+            KeyboardInput.keyboardInputObject = new KeyboardInput();
+        }
+        return KeyboardInput.keyboardInputObject;
+    }
+
+    /**
+     * Reads the next line typed by the user.
+     *
+     * @return The line, without leading and trailing whitespace
+     */
+    public static String readLine() {
+        return KeyboardInput.getObject().scanner.nextLine().trim();
+    }
+}
@@ -0,0 +1,33 @@
+package ascii_art;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for one stage of one ASCII art conversion. Its
+ * duration is the stage's wall time; it is only committed while a recording
+ * has the event enabled, and costs next to nothing otherwise.
+ */
+@Name("ascii_art.PipelineStage")
+@Label("ASCII Art Pipeline Stage")
+@Category("ASCII Art")
+@Description("One stage of converting an image to ASCII art")
+@StackTrace(false)
+class PipelineStageEvent extends Event {
+	@Label("Stage")
+	String stage;
+
+	@Label("Blocks")
+	@Description("Number of blocks the stage processed")
+	long blocks;
+
+	@Label("Allocated")
+	@Description("Bytes allocated by the converting thread during the stage, or -1 if unknown")
+	@DataAmount
+	long allocatedBytes;
+}
@@ -0,0 +1,253 @@
+package ascii_art;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-stage counters of the ASCII art pipeline: how often each stage ran, its
+ * wall time, the bytes the converting thread allocated during it, and the
+ * number of blocks it processed, both in total and for its latest run.
+ * Every stage is also reported as a {@link PipelineStageEvent} to Flight
+ * Recorder. Measuring a stage costs two clock reads and two reads of the
+ * thread's allocation counter, so the counters are always on.
+ * Allocation is read from {@code com.sun.management.ThreadMXBean}; where that
+ * is not available it is reported as unknown. Work done on pool threads,
+ * which is small next to the arrays the calling thread allocates, is not
+ * counted.
+ * All methods are thread safe.
+ */
+public class PipelineStats {
+	/** The stages of a conversion, in pipeline order */
+	public enum Stage {
+		/** Fingerprinting the image and looking up a cached result */
+		LOOKUP,
+		/** Building the image's brightness table */
+		TABLE,
+		/** Looking up the brightness of every block */
+		BRIGHTNESS,
+		/** Looking up the average color of every block */
+		COLOR,
+		/** Matching every block to a character */
+		MATCH,
+		/** Writing the result out */
+		OUTPUT
+	}
+
+	private static final double NANOS_PER_MILLI = 1_000_000.0;
+	private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+	private static final long UNKNOWN = -1;
+
+	/** The allocation counter, or null if the JVM does not provide one */
+	private static final com.sun.management.ThreadMXBean ALLOCATION = allocationBean();
+
+	private final Map<Stage, Counters> counters = new EnumMap<>(Stage.class);
+
+	/**
+	 * Constructs empty counters.
+	 */
+	public PipelineStats() {
+		for (Stage stage : Stage.values()) {
+			counters.put(stage, new Counters());
+		}
+	}
+
+	/**
+	 * Starts measuring a sequence of stages on the calling thread.
+	 *
+	 * @return A span whose {@link Span#end} records a stage and starts the
+	 *         next one
+	 */
+	public Span begin() {
+		return new Span();
+	}
+
+	/**
+	 * Clears every counter.
+	 */
+	public synchronized void reset() {
+		for (Counters c : counters.values()) {
+			c.reset();
+		}
+	}
+
+	/**
+	 * Returns the number of times a stage ran.
+	 *
+	 * @param stage The stage
+	 * @return The count
+	 */
+	public synchronized long getCount(Stage stage) {
+		return counters.get(stage).count;
+	}
+
+	/**
+	 * Returns the total wall time of a stage.
+	 *
+	 * @param stage The stage
+	 * @return The time in nanoseconds
+	 */
+	public synchronized long getTotalNanos(Stage stage) {
+		return counters.get(stage).nanos;
+	}
+
+	/**
+	 * Returns the total bytes allocated during a stage.
+	 *
+	 * @param stage The stage
+	 * @return The bytes, or -1 if allocation cannot be measured
+	 */
+	public synchronized long getTotalAllocatedBytes(Stage stage) {
+		return ALLOCATION == null ? UNKNOWN : counters.get(stage).bytes;
+	}
+
+	/**
+	 * Returns the total number of blocks a stage processed.
+	 *
+	 * @param stage The stage
+	 * @return The block count
+	 */
+	public synchronized long getTotalBlocks(Stage stage) {
+		return counters.get(stage).blocks;
+	}
+
+	/**
+	 * Returns a table of the counters, one line per stage that ran.
+	 *
+	 * @return The table
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder table = new StringBuilder(String.format("%-10s %7s %11s %10s %11s %10s %12s%n",
+				"stage", "runs", "total ms", "last ms", "total MB", "last MB", "blocks"));
+		for (Map.Entry<Stage, Counters> entry : counters.entrySet()) {
+			Counters c = entry.getValue();
+			if (c.count == 0) {
+				continue;
+			}
+			table.append(String.format("%-10s %7d %11.3f %10.3f %11s %10s %12d%n",
+					entry.getKey().name().toLowerCase(Locale.ROOT), c.count,
+					c.nanos / NANOS_PER_MILLI, c.lastNanos / NANOS_PER_MILLI,
+					megabytes(c.bytes), megabytes(c.lastBytes), c.blocks));
+		}
+		return table.toString();
+	}
+
+	/*
+	 * Adds one run of a stage.
+	 */
+	private synchronized void record(Stage stage, long nanos, long bytes, long blocks) {
+		Counters c = counters.get(stage);
+		c.count++;
+		c.nanos += nanos;
+		c.bytes += bytes;
+		c.blocks += blocks;
+		c.lastNanos = nanos;
+		c.lastBytes = bytes;
+	}
+
+	/*
+	 * Formats a byte count in megabytes, or "n/a" if unknown.
+	 */
+	private static String megabytes(long bytes) {
+		return ALLOCATION == null ? "n/a" : String.format("%.3f", bytes / BYTES_PER_MEGABYTE);
+	}
+
+	/*
+	 * Returns the bytes allocated so far by the calling thread, or 0 if unknown.
+	 */
+	private static long allocatedBytes() {
+		return ALLOCATION == null ? 0 : ALLOCATION.getCurrentThreadAllocatedBytes();
+	}
+
+	/*
+	 * Returns the allocation counter, enabling it if needed, or null.
+	 */
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		try {
+			if (!sunBean.isThreadAllocatedMemorySupported()) {
+				return null;
+			}
+			if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+				sunBean.setThreadAllocatedMemoryEnabled(true);
+			}
+		} catch (UnsupportedOperationException | SecurityException e) {
+			return null;
+		}
+		return sunBean;
+	}
+
+	/**
+	 * Measures consecutive stages on one thread. Each call to
+	 * {@link #end(Stage, long)} records the time since the previous call, or
+	 * since the span began, as the given stage.
+	 */
+	public final class Span {
+		private long startNanos;
+		private long startBytes;
+		private PipelineStageEvent event;
+
+		private Span() {
+			restart();
+		}
+
+		/**
+		 * Records the stage that just finished and starts the next one.
+		 *
+		 * @param stage  The stage that finished
+		 * @param blocks The number of blocks it processed
+		 */
+		public void end(Stage stage, long blocks) {
+			long nanos = System.nanoTime() - startNanos;
+			long bytes = ALLOCATION == null ? UNKNOWN : allocatedBytes() - startBytes;
+			event.end();
+			if (event.shouldCommit()) {
+				event.stage = stage.name();
+				event.blocks = blocks;
+				event.allocatedBytes = bytes;
+				event.commit();
+			}
+			record(stage, nanos, Math.max(bytes, 0), blocks);
+			restart();
+		}
+
+		/**
+		 * Starts the next stage now, leaving out the time since the last one
+		 * ended.
+		 */
+		public void restart() {
+			event = new PipelineStageEvent();
+			event.begin();
+			startBytes = allocatedBytes();
+			startNanos = System.nanoTime();
+		}
+	}
+
+	/*
+	 * The counters of one stage.
+	 */
+	private static class Counters {
+		long count;
+		long nanos;
+		long bytes;
+		long blocks;
+		long lastNanos;
+		long lastBytes;
+
+		void reset() {
+			count = 0;
+			nanos = 0;
+			bytes = 0;
+			blocks = 0;
+			lastNanos = 0;
+			lastBytes = 0;
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package ascii_art;
+
+import image.BlockGrid;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded least-recently-used cache of ASCII art conversion results.
+ * It holds two kinds of entries: block brightness grids, keyed by image
+ * fingerprint and block grid, and finished character grids, keyed also by
+ * the sorted charset and the rounding mode. The bound is on the estimated
+ * number of bytes held, so that large and small grids share it fairly.
+ * All methods are thread safe.
+ */
+public class ResultCache {
+	/** Rough per-array overhead of the JVM, used in size estimates */
+	private static final int ARRAY_OVERHEAD_BYTES = 16;
+
+	/** Rough overhead of a map entry and its key, used in size estimates */
+	private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+	/** Cached grids in access order, the eldest first */
+	private final LinkedHashMap<Key, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Upper bound on the estimated size of all cached grids */
+	private long maxBytes;
+
+	/** Estimated size of all cached grids */
+	private long sizeBytes = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * Constructs an empty cache.
+	 *
+	 * @param maxBytes The bound on the estimated size of the cached grids
+	 */
+	public ResultCache(long maxBytes) {
+		setMaxBytes(maxBytes);
+	}
+
+	/**
+	 * Changes the size bound, evicting the least recently used grids if the
+	 * cache is now over it.
+	 *
+	 * @param maxBytes The new bound in bytes, at least 0
+	 * @throws IllegalArgumentException if maxBytes is negative
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("Cache size must not be negative: " + maxBytes);
+		}
+		this.maxBytes = maxBytes;
+		evictToBound();
+	}
+
+	/**
+	 * Returns the cached brightness grid of an image in a block grid.
+	 *
+	 * @param fingerprint The image fingerprint
+	 * @param grid        The block grid
+	 * @return The cached grid, or null on a miss
+	 */
+	public synchronized double[][] getBrightness(long fingerprint, BlockGrid grid) {
+		return (double[][]) lookup(new Key(fingerprint, grid, null, null));
+	}
+
+	/**
+	 * Caches the brightness grid of an image in a block grid.
+	 *
+	 * @param fingerprint The image fingerprint
+	 * @param grid        The block grid
+	 * @param brightness  The grid, which must not be modified afterwards
+	 */
+	public synchronized void putBrightness(long fingerprint, BlockGrid grid, double[][] brightness) {
+		store(new Key(fingerprint, grid, null, null), brightness,
+				gridBytes(brightness.length, brightness[0].length, Double.BYTES));
+	}
+
+	/**
+	 * Returns a cached conversion result.
+	 *
+	 * @param fingerprint  The image fingerprint
+	 * @param grid         The block grid
+	 * @param charset      The charset as a sorted string
+	 * @param roundingMode The rounding mode used for matching
+	 * @return The cached grid, or null on a miss
+	 */
+	public synchronized char[][] getResult(long fingerprint, BlockGrid grid, String charset,
+			String roundingMode) {
+		return (char[][]) lookup(new Key(fingerprint, grid, charset, roundingMode));
+	}
+
+	/**
+	 * Caches a conversion result.
+	 *
+	 * @param fingerprint  The image fingerprint
+	 * @param grid         The block grid
+	 * @param charset      The charset as a sorted string
+	 * @param roundingMode The rounding mode used for matching
+	 * @param result       The grid, which must not be modified afterwards
+	 */
+	public synchronized void putResult(long fingerprint, BlockGrid grid, String charset,
+			String roundingMode, char[][] result) {
+		store(new Key(fingerprint, grid, charset, roundingMode), result,
+				gridBytes(result.length, result[0].length, Character.BYTES));
+	}
+
+	/**
+	 * Removes every entry. The counters are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		sizeBytes = 0;
+	}
+
+	/**
+	 * Returns the number of lookups that found an entry.
+	 *
+	 * @return The hit count
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that found no entry.
+	 *
+	 * @return The miss count
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of entries removed to stay within the size bound.
+	 *
+	 * @return The eviction count
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of cached grids.
+	 *
+	 * @return The entry count
+	 */
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the estimated size of all cached grids.
+	 *
+	 * @return The size in bytes
+	 */
+	public synchronized long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	/**
+	 * Returns the bound on the estimated size of the cached grids.
+	 *
+	 * @return The bound in bytes
+	 */
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Returns a one-line summary of the counters and the size.
+	 *
+	 * @return The summary
+	 */
+	@Override
+	public synchronized String toString() {
+		return String.format("entries=%d size=%d/%d bytes hits=%d misses=%d evictions=%d",
+				entries.size(), sizeBytes, maxBytes, hits, misses, evictions);
+	}
+
+	/*
+	 * Looks up an entry, counting the hit or miss.
+	 */
+	private Object lookup(Key key) {
+		Object value = entries.get(key);
+		if (value == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return value;
+	}
+
+	/*
+	 * Adds or replaces an entry and evicts down to the bound. Grids larger
+	 * than the whole bound are not cached.
+	 */
+	private void store(Key key, Object value, long bytes) {
+		if (bytes > maxBytes) {
+			return;
+		}
+		Object previous = entries.put(key, value);
+		if (previous != null) {
+			sizeBytes -= sizeOf(previous);
+		}
+		sizeBytes += bytes;
+		evictToBound();
+	}
+
+	/*
+	 * Removes the least recently used entries until the size is within bound.
+	 */
+	private void evictToBound() {
+		Iterator<Map.Entry<Key, Object>> eldest = entries.entrySet().iterator();
+		while (sizeBytes > maxBytes && eldest.hasNext()) {
+			sizeBytes -= sizeOf(eldest.next().getValue());
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	/*
+	 * Returns the estimated size of a cached grid.
+	 */
+	private static long sizeOf(Object value) {
+		if (value instanceof double[][]) {
+			double[][] grid = (double[][]) value;
+			return gridBytes(grid.length, grid[0].length, Double.BYTES);
+		}
+		char[][] grid = (char[][]) value;
+		return gridBytes(grid.length, grid[0].length, Character.BYTES);
+	}
+
+	/*
+	 * Estimates the bytes taken by a rows x cols grid and its map entry.
+	 */
+	private static long gridBytes(int rows, int cols, int cellBytes) {
+		return ENTRY_OVERHEAD_BYTES + ARRAY_OVERHEAD_BYTES +
+				(long) rows * (ARRAY_OVERHEAD_BYTES + (long) cols * cellBytes);
+	}
+
+	/*
+	 * Identifies a cached grid. Brightness grids have a null charset and
+	 * rounding mode.
+	 */
+	private static final class Key {
+		private final long fingerprint;
+		private final BlockGrid grid;
+		private final String charset;
+		private final String roundingMode;
+
+		Key(long fingerprint, BlockGrid grid, String charset, String roundingMode) {
+			this.fingerprint = fingerprint;
+			this.grid = grid;
+			this.charset = charset;
+			this.roundingMode = roundingMode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return fingerprint == other.fingerprint && grid.equals(other.grid) &&
+					Objects.equals(charset, other.charset) &&
+					Objects.equals(roundingMode, other.roundingMode);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(fingerprint, grid, charset, roundingMode);
+		}
+	}
+}
@@ -1,10 +1,16 @@
 package ascii_art;
 
+import ascii_output.AnsiColorAsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
+import ascii_output.HtmlColorAsciiOutput;
 import exceptions.EmptyCharsetException;
 import exceptions.ImageProcessingException;
+import image.BlockGrid;
 import image.Image;
+import image_char_matching.BrailleEncoder;
+import image_char_matching.ErrorDiffusion;
+import image_char_matching.StructuralCharMatcher;
 import image_char_matching.SubImgCharMatcher;
 
 import java.io.IOException;
@@ -28,16 +34,31 @@ public class Shell {
 	private static final String CMD_ROUND = "round";
 	private static final String CMD_OUTPUT = "output";
 	private static final String CMD_ASCII_ART = "asciiArt";
+	private static final String CMD_PARALLEL = "parallel";
+	private static final String CMD_STATS = "stats";
+	private static final String CMD_MATCH = "match";
+	private static final String CMD_DITHER = "dither";
 
 	// Command arguments
-	private static final String ARG_ALL = "all";
-	private static final String ARG_SPACE = "space";
 	private static final String ARG_UP = "up";
 	private static final String ARG_DOWN = "down";
+	private static final String ARG_RESET = "reset";
+	private static final String ARG_PADDED = "padded";
 
 	// Output types
 	private static final String OUTPUT_CONSOLE = "console";
 	private static final String OUTPUT_HTML = "html";
+	private static final String OUTPUT_REDRAW = "redraw";
+	private static final String OUTPUT_ANSI = "ansi";
+	private static final String OUTPUT_HTML_COLOR = "html-color";
+
+	// Matching engines
+	private static final String MATCH_BRIGHTNESS = "brightness";
+	private static final String MATCH_STRUCTURAL = "structural";
+	private static final String MATCH_BRAILLE = "braille";
+
+	// Dithering
+	private static final String DITHER_NONE = "none";
 
 	// Rounding modes
 	private static final String ROUND_ABS = "abs";
@@ -57,23 +78,44 @@ public class Shell {
 			"Did not change rounding mode due to incorrect format.";
 	private static final String ERROR_INCORRECT_OUTPUT =
 			"Did not change output method due to incorrect format.";
+	private static final String ERROR_INCORRECT_PARALLELISM =
+			"Did not change parallelism due to incorrect format.";
+	private static final String ERROR_INCORRECT_MATCH =
+			"Did not change matching engine due to incorrect format.";
+	private static final String ERROR_INCORRECT_DITHER =
+			"Did not change dithering due to incorrect format.";
 	private static final String ERROR_IMAGE_PATH =
 			"ERROR: Must provide exactly one image file path as argument.";
 	private static final String ERROR_PREFIX = "ERROR: ";
 
 	// Status messages
+	private static final String CACHE_STATS = "cache: ";
 	private static final String PROMPT = ">>> ";
 	private static final String RESOLUTION_SET = "Resolution set to ";
 	private static final String ROUNDING_MODE_SET = "Rounding mode is set to ";
+	private static final String PARALLELISM_SET = "Parallelism set to ";
+	private static final String MATCH_SET = "Matching engine set to ";
+	private static final String DITHER_SET = "Dithering set to ";
 	private static final String DOT = ".";
 	private static final String SPACE = " ";
 
 	// State fields
 	private Image image;
 	private TreeSet<Character> charset = new TreeSet<>();
+	private final SubImgCharMatcher matcher;
+	private final StructuralCharMatcher structuralMatcher;
+	private final BrailleEncoder brailleEncoder = new BrailleEncoder();
+	private String matchEngine;
+	private ErrorDiffusion.Kernel dithering;
 	private int resolution;
+	private boolean fittedGrid;
+	/** The resolution of the padded grid, kept while the fitted one is used */
+	private int paddedResolution;
 	private String outputType;
 	private String roundingMode;
+	private final ConsoleAsciiOutput consoleOutput = new ConsoleAsciiOutput();
+	private final ConsoleAsciiOutput redrawOutput = new ConsoleAsciiOutput(true);
+	private final AnsiColorAsciiOutput ansiOutput = new AnsiColorAsciiOutput();
 
 	/**
 	 * Constructs a new Shell instance with default settings:
@@ -81,12 +123,19 @@ public class Shell {
 	 * - Resolution: 2
 	 * - Output type: console
 	 * - Rounding mode: absolute
+	 * - Matching engine: brightness
+	 * - Dithering: none
 	 */
 	public Shell() {
 		// Set defaults
 		this.charset = new TreeSet<>();
 		for (char c = '0'; c <= '9'; c++)
 			this.charset.add(c);
+		this.matcher = new SubImgCharMatcher(new char[0]);
+		for (char c : charset)
+			matcher.addChar(c);
+		this.structuralMatcher = new StructuralCharMatcher(matcher);
+		this.matchEngine = MATCH_BRIGHTNESS;
 		this.resolution = 2;
 		this.outputType = OUTPUT_CONSOLE;
 		this.roundingMode = ROUND_ABS;
@@ -123,6 +172,14 @@ public class Shell {
 				roundCommand(input);
 			} else if (input.startsWith(CMD_OUTPUT)) {
 				outputCommand(input);
+			} else if (input.startsWith(CMD_PARALLEL)) {
+				parallelCommand(input);
+			} else if (input.startsWith(CMD_STATS)) {
+				statsCommand(input);
+			} else if (input.startsWith(CMD_MATCH)) {
+				matchCommand(input);
+			} else if (input.startsWith(CMD_DITHER)) {
+				ditherCommand(input);
 			} else if (input.startsWith(CMD_ASCII_ART)) {
 				try {
 					asciiArtCommand(input);
@@ -130,6 +187,9 @@ public class Shell {
 					System.out.println(ERROR_PREFIX + e.getMessage());
 				} catch (ImageProcessingException e) {
 					System.out.println(ERROR_PREFIX + e.getMessage());
+				} catch (IllegalArgumentException e) {
+					// An image too large for a brightness table, or a grid it cannot split
+					System.out.println(ERROR_PREFIX + e.getMessage());
 				}
 			} else {
 				System.out.println(ERROR_INCORRECT_COMMAND);
@@ -159,55 +219,84 @@ public class Shell {
 			System.out.println(ERROR_NO_CHARS);
 			return;
 		}
-		String arg = tokens[1];
-		if (arg.equals(ARG_ALL)) {
-			for (char c = 32; c <= 126; c++)
-				if (addition)
-					charset.add(c);
-				else
-					charset.remove(c);
-		} else if (arg.equals(ARG_SPACE)) {
-			if (addition)
-				charset.add(' ');
-			else
-				charset.remove(' ');
-		} else if (arg.length() == 1) {
-			if (addition)
-				charset.add(arg.charAt(0));
-			else
-				charset.remove(arg.charAt(0));
-		} else if (arg.length() == 3 && arg.charAt(1) == '-') {
-			char start = (char) Math.min(arg.charAt(0), arg.charAt(2));
-			char end = (char) Math.max(arg.charAt(0), arg.charAt(2));
-			for (char c = start; c <= end; c++)
-				if (addition)
-					charset.add(c);
-				else
-					charset.remove(c);
-		} else {
+		char[] chars = CharsetParser.parse(tokens[1]);
+		if (chars == null) {
 			System.out.println(ERROR_NO_CHARS);
+			return;
+		}
+		if (addition) {
+			// Presets can hold hundreds of glyphs, so render them in parallel up front
+			SubImgCharMatcher.precomputeBrightness(chars);
+		}
+		for (char c : chars)
+			updateCharset(c, addition);
+	}
+
+	/*
+	 * Adds a character to, or removes it from, both the displayed charset and
+	 * the matcher, which applies the change incrementally.
+	 *
+	 * @param c        The character
+	 * @param addition true for adding the character, false for removing it
+	 */
+	private void updateCharset(char c, boolean addition) {
+		if (addition) {
+			charset.add(c);
+			matcher.addChar(c);
+		} else {
+			charset.remove(c);
+			matcher.removeChar(c);
 		}
 	}
 
 	/*
 	 * Handles resolution commands, allowing users to increase or decrease the
-	 * resolution.
+	 * resolution, or to set any number of characters per row with "res <n>".
+	 * A number switches to a block grid that follows the image's aspect ratio
+	 * without power-of-two padding; up and down then keep that grid, and
+	 * "res padded" returns to the padded grid at its last resolution.
 	 *
 	 * @param input The command input string
 	 */
 	private void resolutionCommand(String input) {
 		String[] tokens = input.trim().split("\\s+");
 		if (tokens.length == 1) {
-			if (tokens[0].startsWith(CMD_RES)) {
-				System.out.println(RESOLUTION_SET + resolution + DOT);
+			System.out.println(RESOLUTION_SET + describeResolution() + DOT);
+			return;
+		}
+		if (tokens[1].equals(ARG_PADDED)) {
+			if (fittedGrid) {
+				resolution = paddedResolution;
+				fittedGrid = false;
+			}
+			System.out.println(RESOLUTION_SET + describeResolution() + DOT);
+			return;
+		}
+		if (!tokens[1].isEmpty() && Character.isDigit(tokens[1].charAt(0))) {
+			int columns;
+			try {
+				columns = Integer.parseInt(tokens[1]);
+			} catch (NumberFormatException e) {
+				System.out.println(ERROR_INCORRECT_FORMAT);
 				return;
 			}
+			if (columns < 1 || columns > image.getWidth()) {
+				System.out.println(ERROR_INCORRECT_RESOLUTION);
+				return;
+			}
+			if (!fittedGrid) {
+				paddedResolution = resolution;
+			}
+			resolution = columns;
+			fittedGrid = true;
+			System.out.println(RESOLUTION_SET + describeResolution() + DOT);
+			return;
 		}
 		if (!(tokens[1].startsWith(ARG_UP) || tokens[1].startsWith(ARG_DOWN))) {
 			System.out.println(ERROR_INCORRECT_FORMAT);
 			return;
 		}
-		int minCharsInRow = Math.max(1, image.getWidth() / image.getHeight());
+		int minCharsInRow = fittedGrid ? 1 : Math.max(1, image.getWidth() / image.getHeight());
 		int maxCharsInRow = image.getWidth();
 		if (tokens[1].equals(ARG_UP)) {
 			if (resolution * 2 > maxCharsInRow) {
@@ -222,7 +311,29 @@ public class Shell {
 			}
 			resolution /= 2;
 		}
-		System.out.println(RESOLUTION_SET + resolution + DOT);
+		System.out.println(RESOLUTION_SET + describeResolution() + DOT);
+	}
+
+	/*
+	 * Returns the block grid of the current image at the current resolution.
+	 */
+	private BlockGrid currentGrid() {
+		if (fittedGrid) {
+			return BlockGrid.fitted(image.getWidth(), image.getHeight(), resolution);
+		}
+		return BlockGrid.padded(image.getWidth(), image.getHeight(), resolution);
+	}
+
+	/*
+	 * Returns the resolution as printed: the number of characters per row, or
+	 * columns x rows for a grid that follows the aspect ratio.
+	 */
+	private String describeResolution() {
+		if (!fittedGrid) {
+			return String.valueOf(resolution);
+		}
+		BlockGrid grid = currentGrid();
+		return grid.getColumns() + "x" + grid.getRows();
 	}
 
 	/*
@@ -247,59 +358,198 @@ public class Shell {
 	}
 
 	/*
-	 * Handles output type commands, allowing users to switch between console and
-	 * HTML output.
+	 * Handles output type commands, allowing users to switch between console,
+	 * console redrawn in place, HTML, and colored console (ansi) or HTML
+	 * (html-color) output.
 	 *
 	 * @param input The command input string
 	 */
 	private void outputCommand(String input) {
 		String[] tokens = input.trim().split("\\s+");
 		if (tokens.length != 2 ||
-				!(tokens[1].equals(OUTPUT_CONSOLE) || tokens[1].equals(OUTPUT_HTML))) {
+				!(tokens[1].equals(OUTPUT_CONSOLE) || tokens[1].equals(OUTPUT_HTML) ||
+						tokens[1].equals(OUTPUT_REDRAW) || tokens[1].equals(OUTPUT_ANSI) ||
+						tokens[1].equals(OUTPUT_HTML_COLOR))) {
 			System.out.println(ERROR_INCORRECT_OUTPUT);
 			return;
 		}
+		// Color sums quadruple the brightness table, so drop them with the color output
+		if (isColorOutput(outputType) && !isColorOutput(tokens[1]) && image != null) {
+			image.releaseBrightnessTable();
+		}
 		outputType = tokens[1];
 	}
 
+	/*
+	 * Returns whether an output type draws the block colors.
+	 */
+	private static boolean isColorOutput(String type) {
+		return type.equals(OUTPUT_ANSI) || type.equals(OUTPUT_HTML_COLOR);
+	}
+
+	/*
+	 * Handles matching engine commands, allowing users to switch between
+	 * matching blocks by brightness only, by their structure (see
+	 * {@link StructuralCharMatcher}), and drawing them as braille patterns of
+	 * 2 x 4 sub-pixels, which needs no charset (see {@link BrailleEncoder}).
+	 *
+	 * @param input The command input string
+	 */
+	private void matchCommand(String input) {
+		String[] tokens = input.trim().split("\\s+");
+		if (tokens.length == 1) {
+			System.out.println(MATCH_SET + matchEngine + DOT);
+			return;
+		}
+		if (tokens.length != 2 ||
+				!(tokens[1].equals(MATCH_BRIGHTNESS) || tokens[1].equals(MATCH_STRUCTURAL) ||
+						tokens[1].equals(MATCH_BRAILLE))) {
+			System.out.println(ERROR_INCORRECT_MATCH);
+			return;
+		}
+		matchEngine = tokens[1];
+		System.out.println(MATCH_SET + matchEngine + DOT);
+	}
+
+	/*
+	 * Handles dithering commands, allowing users to diffuse the matching
+	 * error of brightness matching with the Floyd-Steinberg or Atkinson
+	 * kernel (see {@link ErrorDiffusion}), or to turn it off.
+	 *
+	 * @param input The command input string
+	 */
+	private void ditherCommand(String input) {
+		String[] tokens = input.trim().split("\\s+");
+		if (tokens.length == 1) {
+			System.out.println(DITHER_SET + (dithering == null ? DITHER_NONE : dithering) + DOT);
+			return;
+		}
+		ErrorDiffusion.Kernel kernel =
+				tokens.length == 2 ? ErrorDiffusion.Kernel.forName(tokens[1]) : null;
+		if (kernel == null && !(tokens.length == 2 && tokens[1].equals(DITHER_NONE))) {
+			System.out.println(ERROR_INCORRECT_DITHER);
+			return;
+		}
+		dithering = kernel;
+		System.out.println(DITHER_SET + tokens[1] + DOT);
+	}
+
+	/*
+	 * Handles parallelism commands, allowing users to set the number of threads
+	 * used for the conversion.
+	 *
+	 * @param input The command input string
+	 */
+	private void parallelCommand(String input) {
+		String[] tokens = input.trim().split("\\s+");
+		if (tokens.length == 1) {
+			System.out.println(PARALLELISM_SET + AsciiArtAlgorithm.getParallelism() + DOT);
+			return;
+		}
+		int level;
+		try {
+			level = Integer.parseInt(tokens[1]);
+		} catch (NumberFormatException e) {
+			System.out.println(ERROR_INCORRECT_PARALLELISM);
+			return;
+		}
+		if (tokens.length != 2 || level < 1) {
+			System.out.println(ERROR_INCORRECT_PARALLELISM);
+			return;
+		}
+		AsciiArtAlgorithm.setParallelism(level);
+		System.out.println(PARALLELISM_SET + level + DOT);
+	}
+
+	/*
+	 * Handles the stats command: prints the per-stage counters of the pipeline
+	 * and the result cache counters, or clears the stage counters with
+	 * "stats reset".
+	 *
+	 * @param input The command input string
+	 */
+	private void statsCommand(String input) {
+		String[] tokens = input.trim().split("\\s+");
+		if (tokens.length == 2 && tokens[1].equals(ARG_RESET)) {
+			AsciiArtAlgorithm.getStats().reset();
+			return;
+		}
+		if (tokens.length != 1) {
+			System.out.println(ERROR_INCORRECT_COMMAND);
+			return;
+		}
+		System.out.print(AsciiArtAlgorithm.getStats());
+		System.out.println(CACHE_STATS + AsciiArtAlgorithm.getCache());
+	}
+
 	/*
 	 * Generates ASCII art from the current image using the configured settings.
 	 *
 	 * @param input The command input string
 	 * 
-	 * @throws EmptyCharsetException If the character set is too small
+	 * @throws EmptyCharsetException If the character set is too small for the engine
 	 * 
 	 * @throws ImageProcessingException If there's an error processing the image
+	 * 
+	 * @throws IllegalArgumentException If the image is too large to convert
 	 */
 	private void asciiArtCommand(String input) {
-		if (charset.size() < 2) {
+		boolean braille = matchEngine.equals(MATCH_BRAILLE);
+		if (!braille && charset.size() < 2) {
 			throw new EmptyCharsetException("Charset is too small. Need at least 2 characters.");
 		}
-		// Convert charset to array for the algorithm
-		char[] charsetArray = new char[charset.size()];
-		int i = 0;
-		for (char c : charset)
-			charsetArray[i++] = c;
-
-		// Run the algorithm
-		AsciiArtAlgorithm algo = new AsciiArtAlgorithm(image, resolution, charsetArray, resolution);
+		// Run the algorithm with the shell's long-lived matcher
+		AsciiArtAlgorithm algo;
+		if (braille) {
+			algo = new AsciiArtAlgorithm(image, currentGrid(), brailleEncoder);
+		} else if (matchEngine.equals(MATCH_STRUCTURAL)) {
+			algo = new AsciiArtAlgorithm(image, currentGrid(), structuralMatcher);
+		} else {
+			algo = new AsciiArtAlgorithm(image, currentGrid(), matcher);
+			algo.setDithering(dithering);
+		}
+		// Colors first, so the brightness table is built once, with color sums
+		boolean colored = isColorOutput(outputType);
+		int[][] colors = colored ? algo.computeBlockColors() : null;
 		char[][] asciiResult = algo.run();
 
+		PipelineStats.Span span = AsciiArtAlgorithm.getStats().begin();
 		if (outputType.equals(OUTPUT_CONSOLE)) {
-			ConsoleAsciiOutput out = new ConsoleAsciiOutput();
-			out.out(asciiResult);
+			consoleOutput.out(asciiResult);
+		} else if (outputType.equals(OUTPUT_REDRAW)) {
+			redrawOutput.out(asciiResult);
+		} else if (outputType.equals(OUTPUT_ANSI)) {
+			ansiOutput.out(asciiResult, colors);
+		} else if (outputType.equals(OUTPUT_HTML_COLOR)) {
+			new HtmlColorAsciiOutput("out.html", "Courier New").out(asciiResult, colors);
 		} else if (outputType.equals(OUTPUT_HTML)) {
 			HtmlAsciiOutput out = new HtmlAsciiOutput("out.html", "Courier New");
 			out.out(asciiResult);
 		}
+		span.end(PipelineStats.Stage.OUTPUT, (long) asciiResult.length * asciiResult[0].length);
 	}
 
 	/**
 	 * Main entry point for the ASCII art shell.
 	 *
-	 * @param args Command line arguments - must contain exactly one image file path
+	 * @param args Command line arguments - must contain exactly one image file path,
+	 *             or start with --batch to convert many images non-interactively
+	 *             (see {@link BatchRunner}), or with --animate to convert a GIF or
+	 *             frame directory to an animation (see {@link AnimationRunner}),
+	 *             or with --serve to serve conversions over HTTP (see
+	 *             {@link ConversionServer})
 	 */
 	public static void main(String[] args) {
+		if (BatchRunner.isBatchInvocation(args)) {
+			System.exit(BatchRunner.run(args));
+		}
+		if (AnimationRunner.isAnimationInvocation(args)) {
+			System.exit(AnimationRunner.run(args));
+		}
+		if (ConversionServer.isServeInvocation(args)) {
+			ConversionServer.main(args);
+			return;
+		}
 		if (args.length != 1) {
 			System.out.println(ERROR_IMAGE_PATH);
 			return;
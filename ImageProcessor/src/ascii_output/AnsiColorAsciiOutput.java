@@ -0,0 +1,48 @@
+package ascii_output;
+
+import java.nio.charset.Charset;
+
+/**
+ * Output a 2D array of chars to the console in 24-bit ANSI color.
+ * A color escape is emitted only where the color changes, the color is reset
+ * at the end of every line so that the terminal's background never bleeds,
+ * and the whole frame is written to System.out with a single call.
+ */
+public class AnsiColorAsciiOutput implements ColorAsciiOutput {
+    private static final String FOREGROUND = "\033[38;2;";
+    private static final String RESET = "\033[0m";
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final int NO_COLOR = -1;
+
+    private final Charset charset = ConsoleAsciiOutput.stdoutCharset();
+    private final StringBuilder frame = new StringBuilder();
+
+    @Override
+    public void out(char[][] chars) {
+        out(chars, null);
+    }
+
+    @Override
+    public void out(char[][] chars, int[][] colors) {
+        frame.setLength(0);
+        for (int y = 0; y < chars.length; y++) {
+            int current = NO_COLOR;
+            for (int x = 0; x < chars[y].length; x++) {
+                if (colors != null && (colors[y][x] & 0xFFFFFF) != current) {
+                    current = colors[y][x] & 0xFFFFFF;
+                    frame.append(FOREGROUND).append(current >> 16).append(';')
+                            .append((current >> 8) & 0xFF).append(';')
+                            .append(current & 0xFF).append('m');
+                }
+                frame.append(chars[y][x]).append(' ');
+            }
+            if (current != NO_COLOR) {
+                frame.append(RESET);
+            }
+            frame.append(LINE_SEPARATOR);
+        }
+        byte[] bytes = frame.toString().getBytes(charset);
+        System.out.write(bytes, 0, bytes.length);
+        System.out.flush();
+    }
+}
@@ -0,0 +1,16 @@
+package ascii_output;
+
+/**
+ * An output that can also draw each char in a color, such as the average
+ * color of the image block it stands for.
+ */
+public interface ColorAsciiOutput extends AsciiOutput {
+    /**
+     * Output the specified 2D array of chars, each in the color at the same
+     * position.
+     *
+     * @param chars  The chars, indexed [row][column]
+     * @param colors The colors packed as 0x00RRGGBB, indexed like chars
+     */
+    void out(char[][] chars, int[][] colors);
+}
@@ -1,16 +1,106 @@
 package ascii_output;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
 /**
  * Output a 2D array of chars to the console.
+ * The whole frame, separators included, is laid out in one reusable char
+ * array, encoded into one reusable byte array and written to System.out with
+ * a single call. In redraw mode every frame starts by moving the cursor to the
+ * top-left corner and ends by clearing the rest of the screen (ANSI escapes),
+ * so repeated renders replace each other instead of scrolling.
  * @author Dan Nirel
  */public class ConsoleAsciiOutput implements AsciiOutput{
+    private static final String CURSOR_HOME = "\033[H";
+    private static final String CLEAR_TO_END = "\033[J";
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final boolean redraw;
+    private final CharsetEncoder encoder = stdoutCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private char[] frame = new char[0];
+    private ByteBuffer bytes = ByteBuffer.allocate(0);
+
+    public ConsoleAsciiOutput() {
+        this(false);
+    }
+
+    /**
+     * @param redraw Whether each frame should redraw the screen in place
+     */
+    public ConsoleAsciiOutput(boolean redraw) {
+        this.redraw = redraw;
+    }
+
     @Override
     public void out(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+        int length = layout(chars);
+        encoder.reset();
+        CharBuffer in = CharBuffer.wrap(frame, 0, length);
+        bytes.clear();
+        encoder.encode(in, bytes, true);
+        encoder.flush(bytes);
+        System.out.write(bytes.array(), 0, bytes.position());
+        System.out.flush();
+    }
+
+    /**
+     * Returns the charset System.out encodes with: the stdout encoding the
+     * JVM reports, or the default charset.
+     *
+     * @return The charset
+     */
+    static Charset stdoutCharset() {
+        String name = System.getProperty("stdout.encoding",
+                System.getProperty("sun.stdout.encoding"));
+        try {
+            return name == null ? Charset.defaultCharset() : Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            return Charset.defaultCharset();
+        }
+    }
+
+    /*
+     * Lays the frame out in the char array, growing both arrays if needed,
+     * and returns its length.
+     */
+    private int layout(char[][] chars) {
+        int length = redraw ? CURSOR_HOME.length() + CLEAR_TO_END.length() : 0;
+        for (char[] row : chars) {
+            length += 2 * row.length + LINE_SEPARATOR.length();
+        }
+        if (frame.length < length) {
+            frame = new char[length];
+            bytes = ByteBuffer.allocate((int) Math.ceil(length * encoder.maxBytesPerChar()));
+        }
+        int pos = 0;
+        if (redraw) {
+            pos = append(CURSOR_HOME, pos);
+        }
+        for (char[] row : chars) {
+            for (char c : row) {
+                frame[pos++] = c;
+                frame[pos++] = ' ';
             }
-            System.out.println();
+            pos = append(LINE_SEPARATOR, pos);
+        }
+        if (redraw) {
+            pos = append(CLEAR_TO_END, pos);
         }
+        return pos;
+    }
+
+    /*
+     * Copies a string into the frame at pos and returns the position after it.
+     */
+    private int append(String s, int pos) {
+        s.getChars(0, s.length(), frame, pos);
+        return pos + s.length();
     }
 }
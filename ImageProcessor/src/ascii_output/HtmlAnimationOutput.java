@@ -0,0 +1,111 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output a sequence of 2D char arrays to one HTML file that plays them as an
+ * animation. Every frame is a hidden paragraph with its display time, and a
+ * small script shows them in turn, looping forever.
+ * Frames are written one at a time through the buffered writer of
+ * {@link HtmlAsciiOutput}, so only the frame being written is held.
+ */
+public class HtmlAnimationOutput extends HtmlAsciiOutput {
+    private static final int STILL_DELAY_MILLIS = 1000;
+    private static final String FRAME_START = "<p class=\"frame\" data-delay=\"%d\">\n";
+    private static final byte[] FRAME_END = "</p>\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FOOTER = (
+            "<script>\n"+
+                    "var frames = document.getElementsByClassName(\"frame\");\n"+
+                    "var current = 0;\n"+
+                    "function show() {\n"+
+                    "\tframes[current].style.display = \"none\";\n"+
+                    "\tcurrent = (current + 1) % frames.length;\n"+
+                    "\tframes[current].style.display = \"block\";\n"+
+                    "\tsetTimeout(show, frames[current].dataset.delay);\n"+
+                    "}\n"+
+                    "if (frames.length > 0) {\n"+
+                    "\tframes[0].style.display = \"block\";\n"+
+                    "\tsetTimeout(show, frames[0].dataset.delay);\n"+
+                    "}\n"+
+                    "</script>\n"+
+                    "</body>\n"+
+                    "</html>\n").getBytes(StandardCharsets.UTF_8);
+
+    public HtmlAnimationOutput(String filename, String fontName) {
+        super(filename, fontName);
+    }
+
+    /**
+     * Outputs a single frame as a still animation.
+     */
+    @Override
+    public void out(char[][] chars) {
+        try {
+            try {
+                begin(chars[0].length);
+                writeFrame(chars, STILL_DELAY_MILLIS);
+            } finally {
+                end();
+            }
+        } catch(IOException e) {
+            throw writeFailure(e);
+        }
+    }
+
+    /**
+     * Outputs the next frame.
+     *
+     * @param chars       The chars of the frame, with the column count given
+     *                    to begin
+     * @param delayMillis How long to show the frame, in milliseconds
+     * @throws IOException If the frame cannot be written
+     */
+    public void writeFrame(char[][] chars, int delayMillis) throws IOException {
+        byte[] start = String.format(FRAME_START, delayMillis).getBytes(StandardCharsets.UTF_8);
+        reserve(start.length);
+        putBytes(start);
+        for (char[] row : chars) {
+            super.writeRow(row);
+        }
+        reserve(FRAME_END.length);
+        putBytes(FRAME_END);
+    }
+
+    /**
+     * Outputs a frame made of a single row; prefer
+     * {@link #writeFrame(char[][], int)}.
+     */
+    @Override
+    public void writeRow(char[] row) throws IOException {
+        writeFrame(new char[][] {row}, STILL_DELAY_MILLIS);
+    }
+
+    @Override
+    protected String header(int columns) {
+        return String.format(
+                "<!DOCTYPE html>\n"+
+                        "<html>\n"+
+                        "<head>\n"+
+                        "<style>\n"+
+                        ".frame {"+
+                        "\tdisplay:none;"+
+                        "\twhite-space:pre;"+
+                        "\tFONT-FAMILY:%s;"+
+                        "\tFONT-SIZE:%frem;"+
+                        "\tLETTER-SPACING:0.15em;"+
+                        "\tLINE-HEIGHT:%fem;}\n"+
+                        "</style>\n"+
+                        "</head>\n"+
+                        "<body style=\""+
+                        "\tCOLOR:#000000;"+
+                        "\tTEXT-ALIGN:center;"+
+                        "\tFONT-SIZE:1px;\">\n",
+                fontName, BASE_FONT_SIZE/columns, BASE_LINE_SPACING);
+    }
+
+    @Override
+    protected byte[] footer() {
+        return FOOTER;
+    }
+}
@@ -1,63 +1,278 @@
 package ascii_output;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import exceptions.ImageProcessingException;
+
 import java.io.IOException;
-import java.util.logging.Logger;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * Rows are escaped and UTF-8 encoded straight into one reusable byte buffer,
+ * which is written to a FileChannel whenever it fills up, so the memory used
+ * does not depend on the size of the art. If the file name ends with ".gz",
+ * or gzip is requested, the file is gzip-compressed. The page can also be
+ * written to a stream instead of a file, such as an HTTP response body.
  * @author Dan Nirel
  */
-public class HtmlAsciiOutput implements AsciiOutput {
-    private static final double BASE_LINE_SPACING = 0.8;
-    private static final double BASE_FONT_SIZE = 150.0;
+public class HtmlAsciiOutput implements RowAsciiOutput {
+    protected static final double BASE_LINE_SPACING = 0.8;
+    protected static final double BASE_FONT_SIZE = 150.0;
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final int BUFFER_BYTES = 64 * 1024;
+    /** Most bytes one char can take: the length of "&amp;" */
+    protected static final int MAX_BYTES_PER_CHAR = 5;
+    protected static final byte[] LINE_SEPARATOR =
+            System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FOOTER = (
+            "</p>\n"+
+                    "</body>\n"+
+                    "</html>\n").getBytes(StandardCharsets.UTF_8);
 
-    private final String fontName;
+    protected final String fontName;
     private final String filename;
+    private final boolean gzip;
+    /** The stream to write to instead of the file, or null */
+    private final OutputStream stream;
+
+    private WritableByteChannel channel;
+    private ByteBuffer buffer;
 
     public HtmlAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, filename.endsWith(GZIP_SUFFIX));
+    }
+
+    /**
+     * @param filename The file to write
+     * @param fontName The font the page displays the chars in
+     * @param gzip     Whether to gzip-compress the file
+     */
+    public HtmlAsciiOutput(String filename, String fontName, boolean gzip) {
         this.fontName = fontName;
         this.filename = filename;
+        this.gzip = gzip;
+        this.stream = null;
+    }
+
+    /**
+     * @param stream   The stream to write the page to, which {@link #end()}
+     *                 closes
+     * @param fontName The font the page displays the chars in
+     */
+    public HtmlAsciiOutput(OutputStream stream, String fontName) {
+        this.fontName = fontName;
+        this.filename = "stream";
+        this.gzip = false;
+        this.stream = stream;
     }
 
+    /**
+     * Writes the whole page.
+     *
+     * @param chars The chars, indexed [row][column]
+     * @throws ImageProcessingException If the page cannot be written
+     */
     @Override
     public void out(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                    "<!DOCTYPE html>\n"+
-                            "<html>\n"+
-                            "<body style=\""+
-                            "\tCOLOR:#000000;"+
-                            "\tTEXT-ALIGN:center;"+
-                            "\tFONT-SIZE:1px;\">\n"+
-                            "<p style=\""+
-                            "\twhite-space:pre;"+
-                            "\tFONT-FAMILY:%s;"+
-                            "\tFONT-SIZE:%frem;"+
-                            "\tLETTER-SPACING:0.15em;"+
-                            "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
+        try {
+            try {
+                begin(chars[0].length);
+                for (char[] row : chars) {
+                    writeRow(row);
                 }
-                writer.newLine();
+            } finally {
+                end();
             }
-            writer.write(
-                    "</p>\n"+
-                            "</body>\n"+
-                            "</html>\n");
         } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            throw writeFailure(e);
+        }
+    }
+
+    /**
+     * Wraps a failure to write the page, so that callers of the out methods,
+     * which cannot throw IOException, still learn of it.
+     *
+     * @param e The failure
+     * @return The exception to throw
+     */
+    protected ImageProcessingException writeFailure(IOException e) {
+        return new ImageProcessingException(
+                String.format("Failed to write to \"%s\": %s", filename, e.getMessage()), e);
+    }
+
+    @Override
+    public void begin(int columns) throws IOException {
+        if (stream != null) {
+            channel = Channels.newChannel(stream);
+        } else {
+            openFile();
+        }
+        int rowBytes = columns * MAX_BYTES_PER_CHAR + LINE_SEPARATOR.length;
+        if (buffer == null || buffer.capacity() < rowBytes) {
+            buffer = ByteBuffer.allocate(Math.max(BUFFER_BYTES, rowBytes));
+        }
+        buffer.clear();
+        buffer.put(header(columns).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*
+     * Opens the file as the channel, compressed if requested.
+     */
+    private void openFile() throws IOException {
+        FileChannel file = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (!gzip) {
+            channel = file;
+            return;
+        }
+        try {
+            OutputStream compressed = new GZIPOutputStream(Channels.newOutputStream(file), BUFFER_BYTES);
+            channel = Channels.newChannel(compressed);
+        } catch (IOException | RuntimeException e) {
+            // The gzip header could not be written, so the file is not in use
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the markup that opens the page, up to where the first row goes.
+     *
+     * @param columns The number of chars in every row
+     * @return The markup
+     */
+    protected String header(int columns) {
+        return String.format(
+                "<!DOCTYPE html>\n"+
+                        "<html>\n"+
+                        "<body style=\""+
+                        "\tCOLOR:#000000;"+
+                        "\tTEXT-ALIGN:center;"+
+                        "\tFONT-SIZE:1px;\">\n"+
+                        "<p style=\""+
+                        "\twhite-space:pre;"+
+                        "\tFONT-FAMILY:%s;"+
+                        "\tFONT-SIZE:%frem;"+
+                        "\tLETTER-SPACING:0.15em;"+
+                        "\tLINE-HEIGHT:%fem;\">\n",
+                fontName, BASE_FONT_SIZE/columns, BASE_LINE_SPACING);
+    }
+
+    /**
+     * Returns the markup that closes the page after the last row.
+     *
+     * @return The markup, in UTF-8
+     */
+    protected byte[] footer() {
+        return FOOTER;
+    }
+
+    @Override
+    public void writeRow(char[] row) throws IOException {
+        reserve(row.length * MAX_BYTES_PER_CHAR + LINE_SEPARATOR.length);
+        for (char c : row) {
+            putEscaped(c);
+        }
+        buffer.put(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void end() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            byte[] footer = footer();
+            reserve(footer.length);
+            buffer.put(footer);
+            flush();
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Makes room in the buffer for the given number of bytes, flushing it if
+     * needed. Callers then append at most that many bytes.
+     *
+     * @param bytes The number of bytes about to be appended
+     * @throws IOException If the buffer cannot be flushed
+     */
+    protected void reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+            if (buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocate(bytes);
+            }
+        }
+    }
+
+    /**
+     * Appends one char, escaped for HTML and encoded in UTF-8. At most
+     * {@link #MAX_BYTES_PER_CHAR} bytes are appended.
+     *
+     * @param c The char
+     */
+    protected void putEscaped(char c) {
+        switch(c) {
+            case '<': put('&', 'l', 't', ';');  break;
+            case '>': put('&', 'g', 't', ';');  break;
+            case '&': buffer.put((byte) '&'); put('a', 'm', 'p', ';'); break;
+            default:  encode(c);
+        }
+    }
+
+    /**
+     * Appends raw bytes, such as markup or a line separator.
+     *
+     * @param bytes The bytes to append
+     */
+    protected void putBytes(byte[] bytes) {
+        buffer.put(bytes);
+    }
+
+    /*
+     * Appends four ASCII chars to the buffer.
+     */
+    private void put(char a, char b, char c, char d) {
+        buffer.put((byte) a).put((byte) b).put((byte) c).put((byte) d);
+    }
+
+    /*
+     * Appends one char in UTF-8. Chars are rendered one by one, so a
+     * surrogate is never half of a pair and is replaced, as the JDK encoder
+     * does.
+     */
+    private void encode(char c) {
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isSurrogate(c)) {
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xE0 | (c >> 12)))
+                    .put((byte) (0x80 | ((c >> 6) & 0x3F)))
+                    .put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+
+    /*
+     * Writes out and empties the buffer.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
         }
+        buffer.clear();
     }
 }
@@ -0,0 +1,123 @@
+package ascii_output;
+
+import exceptions.ImageProcessingException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output a 2D array of chars to an HTML file, each char colored with a
+ * {@code <span style="color:#rrggbb">}. Consecutive chars of the same color,
+ * including across line ends, share one span, which keeps both the file and
+ * the browser's work small on images with flat areas.
+ */
+public class HtmlColorAsciiOutput extends HtmlAsciiOutput implements ColorAsciiOutput {
+    private static final byte[] SPAN_START = "<span style=\"color:#".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SPAN_START_END = "\">".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SPAN_END = "</span>".getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_SPAN_BYTES =
+            SPAN_END.length + SPAN_START.length + 6 + SPAN_START_END.length;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+    private static final int NO_COLOR = -1;
+
+    private final byte[] hex = new byte[6];
+
+    /** The color of the open span, or NO_COLOR */
+    private int spanColor = NO_COLOR;
+
+    public HtmlColorAsciiOutput(String filename, String fontName) {
+        super(filename, fontName);
+    }
+
+    /**
+     * @param filename The file to write
+     * @param fontName The font the page displays the chars in
+     * @param gzip     Whether to gzip-compress the file
+     */
+    public HtmlColorAsciiOutput(String filename, String fontName, boolean gzip) {
+        super(filename, fontName, gzip);
+    }
+
+    /**
+     * Writes the whole page, each char in its color.
+     *
+     * @param chars  The chars, indexed [row][column]
+     * @param colors The colors packed as 0x00RRGGBB, indexed like chars
+     * @throws ImageProcessingException If the page cannot be written
+     */
+    @Override
+    public void out(char[][] chars, int[][] colors) {
+        try {
+            try {
+                begin(chars[0].length);
+                for (int y = 0; y < chars.length; y++) {
+                    writeRow(chars[y], colors[y]);
+                }
+            } finally {
+                end();
+            }
+        } catch(IOException e) {
+            throw writeFailure(e);
+        }
+    }
+
+    /**
+     * Outputs the next row, each char in its color.
+     *
+     * @param row    The chars of the row
+     * @param colors The colors packed as 0x00RRGGBB, one per char
+     * @throws IOException If the row cannot be written
+     */
+    public void writeRow(char[] row, int[] colors) throws IOException {
+        reserve(row.length * (MAX_BYTES_PER_CHAR + MAX_SPAN_BYTES) + LINE_SEPARATOR.length);
+        for (int x = 0; x < row.length; x++) {
+            int color = colors[x] & 0xFFFFFF;
+            if (color != spanColor) {
+                if (spanColor != NO_COLOR) {
+                    putBytes(SPAN_END);
+                }
+                for (int i = 0; i < hex.length; i++) {
+                    hex[i] = HEX_DIGITS[(color >> (20 - 4 * i)) & 0xF];
+                }
+                putBytes(SPAN_START);
+                putBytes(hex);
+                putBytes(SPAN_START_END);
+                spanColor = color;
+            }
+            putEscaped(row[x]);
+        }
+        putBytes(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void begin(int columns) throws IOException {
+        spanColor = NO_COLOR;
+        super.begin(columns);
+    }
+
+    @Override
+    public void writeRow(char[] row) throws IOException {
+        closeSpan();
+        super.writeRow(row);
+    }
+
+    @Override
+    public void end() throws IOException {
+        try {
+            closeSpan();
+        } finally {
+            super.end();
+        }
+    }
+
+    /*
+     * Closes the open span, if any.
+     */
+    private void closeSpan() throws IOException {
+        if (spanColor != NO_COLOR) {
+            reserve(SPAN_END.length);
+            putBytes(SPAN_END);
+            spanColor = NO_COLOR;
+        }
+    }
+}
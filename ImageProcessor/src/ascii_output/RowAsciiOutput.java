@@ -0,0 +1,36 @@
+package ascii_output;
+
+import java.io.IOException;
+
+/**
+ * An output that can also be fed one row of chars at a time, so that the
+ * whole 2D array never has to exist at once.
+ * A caller calls {@link #begin(int)} once, {@link #writeRow(char[])} for
+ * every row from top to bottom, and then {@link #end()}.
+ */
+public interface RowAsciiOutput extends AsciiOutput {
+    /**
+     * Starts a new output.
+     *
+     * @param columns The number of chars in every row
+     * @throws IOException If the output cannot be opened
+     */
+    void begin(int columns) throws IOException;
+
+    /**
+     * Outputs the next row. The array may be reused by the caller once this
+     * method returns.
+     *
+     * @param row The chars of the row, of the length given to begin
+     * @throws IOException If the row cannot be written
+     */
+    void writeRow(char[] row) throws IOException;
+
+    /**
+     * Completes the output and releases its resources. Safe to call after a
+     * failed begin or writeRow.
+     *
+     * @throws IOException If the output cannot be completed
+     */
+    void end() throws IOException;
+}
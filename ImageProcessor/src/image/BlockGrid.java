@@ -0,0 +1,196 @@
+package image;
+
+/**
+ * The grid of blocks an image is converted in: how many rows and columns of
+ * blocks there are, and which pixels each block covers.
+ * A padded grid is the classic one: n x n square blocks of max(w, h) / n
+ * pixels laid over the image padded to powers of two, centered as
+ * {@link Image#padToPowerOfTwo()} centers it. A fitted grid has no padding:
+ * n columns over the real width and as many rows as keep the blocks closest
+ * to square, so it follows the aspect ratio of the image and n can be any
+ * number up to the width. Block edges are spread evenly, so every pixel lies
+ * in exactly one block and blocks differ in size by at most one pixel.
+ * Block coordinates are in the unpadded image. Blocks of a padded grid may
+ * reach outside it, where the padding counts as white.
+ */
+public final class BlockGrid {
+	private final boolean fitted;
+	private final int imageWidth;
+	private final int imageHeight;
+	private final int rows;
+	private final int columns;
+
+	/** Side of every block of a padded grid */
+	private final int blockSize;
+
+	/** Offsets of the image in the padded area, for padded grids */
+	private final int padTop;
+	private final int padLeft;
+
+	private BlockGrid(boolean fitted, int imageWidth, int imageHeight, int rows, int columns,
+			int blockSize, int padTop, int padLeft) {
+		this.fitted = fitted;
+		this.imageWidth = imageWidth;
+		this.imageHeight = imageHeight;
+		this.rows = rows;
+		this.columns = columns;
+		this.blockSize = blockSize;
+		this.padTop = padTop;
+		this.padLeft = padLeft;
+	}
+
+	/**
+	 * Returns the square grid over the power-of-two padded image. The padding
+	 * is only used in the block coordinates, it is never built.
+	 *
+	 * @param imageWidth   The width of the unpadded image
+	 * @param imageHeight  The height of the unpadded image
+	 * @param blocksPerRow The number of blocks in each row and column
+	 * @return The grid
+	 * @throws IllegalArgumentException if the blocks would be smaller than a
+	 *                                  pixel
+	 */
+	public static BlockGrid padded(int imageWidth, int imageHeight, int blocksPerRow) {
+		int paddedWidth = Image.nextPowerOfTwo(imageWidth);
+		int paddedHeight = Image.nextPowerOfTwo(imageHeight);
+		int blockSize = blocksPerRow < 1 ? 0 : Math.max(paddedWidth, paddedHeight) / blocksPerRow;
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Invalid resolution " + blocksPerRow + " for a " +
+					imageWidth + "x" + imageHeight + " image");
+		}
+		return new BlockGrid(false, imageWidth, imageHeight, blocksPerRow, blocksPerRow, blockSize,
+				(paddedHeight - imageHeight) / 2, (paddedWidth - imageWidth) / 2);
+	}
+
+	/**
+	 * Returns the unpadded grid with the given number of columns, following
+	 * the aspect ratio of the image.
+	 *
+	 * @param imageWidth  The width of the image
+	 * @param imageHeight The height of the image
+	 * @param columns     The number of blocks in each row, from 1 to the width
+	 * @return The grid
+	 * @throws IllegalArgumentException if columns is out of range
+	 */
+	public static BlockGrid fitted(int imageWidth, int imageHeight, int columns) {
+		if (columns < 1 || columns > imageWidth) {
+			throw new IllegalArgumentException("Invalid resolution " + columns + " for a " +
+					imageWidth + "x" + imageHeight + " image");
+		}
+		long rows = Math.round((double) imageHeight * columns / imageWidth);
+		rows = Math.max(1, Math.min(imageHeight, rows));
+		return new BlockGrid(true, imageWidth, imageHeight, (int) rows, columns, 0, 0, 0);
+	}
+
+	/**
+	 * Returns whether this grid follows the image without padding.
+	 *
+	 * @return true for a fitted grid, false for a padded one
+	 */
+	public boolean isFitted() {
+		return fitted;
+	}
+
+	/**
+	 * Returns the number of rows of blocks.
+	 *
+	 * @return The row count
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Returns the number of blocks in each row.
+	 *
+	 * @return The column count
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Returns the number of blocks.
+	 *
+	 * @return rows * columns
+	 */
+	public long getBlockCount() {
+		return (long) rows * columns;
+	}
+
+	/**
+	 * Returns the top pixel row of a row of blocks.
+	 *
+	 * @param row The row of blocks
+	 * @return The pixel row, negative where a padded grid starts above the
+	 *         image
+	 */
+	public int getTop(int row) {
+		if (fitted) {
+			return (int) ((long) row * imageHeight / rows);
+		}
+		return row * blockSize - padTop;
+	}
+
+	/**
+	 * Returns the left pixel column of a column of blocks.
+	 *
+	 * @param column The column of blocks
+	 * @return The pixel column, negative where a padded grid starts left of
+	 *         the image
+	 */
+	public int getLeft(int column) {
+		if (fitted) {
+			return (int) ((long) column * imageWidth / columns);
+		}
+		return column * blockSize - padLeft;
+	}
+
+	/**
+	 * Returns the height in pixels of the blocks of a row.
+	 *
+	 * @param row The row of blocks
+	 * @return The height, at least 1
+	 */
+	public int getBlockHeight(int row) {
+		return fitted ? getTop(row + 1) - getTop(row) : blockSize;
+	}
+
+	/**
+	 * Returns the width in pixels of the blocks of a column.
+	 *
+	 * @param column The column of blocks
+	 * @return The width, at least 1
+	 */
+	public int getBlockWidth(int column) {
+		return fitted ? getLeft(column + 1) - getLeft(column) : blockSize;
+	}
+
+	/**
+	 * Two grids are equal if they split images of the same size the same way.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof BlockGrid)) {
+			return false;
+		}
+		BlockGrid other = (BlockGrid) o;
+		return fitted == other.fitted && imageWidth == other.imageWidth &&
+				imageHeight == other.imageHeight && columns == other.columns;
+	}
+
+	@Override
+	public int hashCode() {
+		return ((Boolean.hashCode(fitted) * 31 + imageWidth) * 31 + imageHeight) * 31 + columns;
+	}
+
+	/**
+	 * Returns the size of the grid and its kind, such as "80x45 fitted".
+	 *
+	 * @return The description
+	 */
+	@Override
+	public String toString() {
+		return columns + "x" + rows + (fitted ? " fitted" : " padded");
+	}
+}
@@ -1,7 +1,5 @@
 package image;
 
-import java.awt.*;
-
 /**
  * A utility class for splitting images into blocks and computing block
  * brightness.
@@ -17,6 +15,8 @@ public class BlockSplitter {
 	 * The blocks are created by dividing the image into a grid where the number of
 	 * blocks per row and column is specified. Each block maintains the same size,
 	 * and any remaining space is padded with white pixels.
+	 * Blocks are views over the image (see {@link Image#subImage}), so no pixel
+	 * is copied and the padding is virtual.
 	 *
 	 * @param image        The image to split into blocks
 	 * @param blocksPerRow The number of blocks to create in each row and column
@@ -34,21 +34,30 @@ public class BlockSplitter {
 
 		for (int by = 0; by < blocksPerCol; by++) {
 			for (int bx = 0; bx < blocksPerRow; bx++) {
-				Color[][] pixels = new Color[blockWidth][blockWidth];
-				for (int y = 0; y < blockWidth; y++) {
-					for (int x = 0; x < blockWidth; x++) {
-						int srcY = by * blockWidth + y;
-						int srcX = bx * blockWidth + x;
-						// Ensure we don't go out of bounds and handle padding
-						if (srcY < imgHeight && srcX < imgWidth) {
-							pixels[y][x] = image.getPixel(srcY, srcX);
-						} else {
-							// Pad with white if out of bounds
-							pixels[y][x] = new Color(255, 255, 255);
-						}
-					}
-				}
-				blocks[by][bx] = new Image(pixels, blockWidth, blockWidth);
+				blocks[by][bx] = image.subImage(by * blockWidth, bx * blockWidth,
+						blockWidth, blockWidth);
+			}
+		}
+		return blocks;
+	}
+
+	/**
+	 * Splits an image into the blocks of a block grid, which may be a padded
+	 * grid of square blocks or a fitted grid that follows the aspect ratio of
+	 * the image without padding (see {@link BlockGrid}).
+	 * Blocks are views over the image, so no pixel is copied and any padding
+	 * is virtual.
+	 *
+	 * @param image The unpadded image to split into blocks
+	 * @param grid  The block grid, built for the size of the image
+	 * @return The blocks, indexed [row][column]
+	 */
+	public static Image[][] splitIntoBlocks(Image image, BlockGrid grid) {
+		Image[][] blocks = new Image[grid.getRows()][grid.getColumns()];
+		for (int by = 0; by < grid.getRows(); by++) {
+			for (int bx = 0; bx < grid.getColumns(); bx++) {
+				blocks[by][bx] = image.subImage(grid.getTop(by), grid.getLeft(bx),
+						grid.getBlockWidth(bx), grid.getBlockHeight(by));
 			}
 		}
 		return blocks;
@@ -58,7 +67,10 @@ public class BlockSplitter {
 	 * Computes the average brightness of an image block.
 	 * The brightness is calculated using the standard grayscale conversion formula:
 	 * 0.2126 * R + 0.7152 * G + 0.0722 * B
-	 * The result is normalized to a value between 0 and 1.
+	 * The result is normalized to a value between 0 and 1. The sum is taken in the
+	 * same fixed point as {@link BrightnessTable}, so both give identical values.
+	 * Rows are copied out of the block and summed a whole row at a time by
+	 * {@link LuminanceKernel}.
 	 *
 	 * @param block The image block to compute brightness for
 	 * @return A double value between 0 and 1 representing the average brightness
@@ -66,21 +78,14 @@ public class BlockSplitter {
 	public static double computeBlockBrightness(Image block) {
 		int height = block.getHeight();
 		int width = block.getWidth();
-		double sum = 0.0;
-		int count = 0;
+		long sum = 0;
 
+		int[] row = new int[width];
 		for (int y = 0; y < height; y++) {
-			for (int x = 0; x < width; x++) {
-				Color color = block.getPixel(y, x); // row,col
-				double greyscale = color.getRed() * 0.2126 +
-						color.getGreen() * 0.7152 +
-						color.getBlue() * 0.0722;
-				sum += greyscale;
-				count++;
-			}
+			block.getRow(y, row, 0);
+			sum += LuminanceKernel.sum(row, 0, width);
 		}
-		double avg = sum / count;
-		return avg / 255.0;
+		return BrightnessTable.toBrightness(sum, (long) height * width);
 	}
 
 }
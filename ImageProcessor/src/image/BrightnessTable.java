@@ -0,0 +1,414 @@
+package image;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A summed-area table (integral image) of the greyscale luminance of an image.
+ * The table is built in one pass over the pixels, after which the average
+ * brightness of any rectangular block is an O(1) lookup, whatever its size.
+ * Luminance is kept in fixed point (0.2126 * R + 0.7152 * G + 0.0722 * B
+ * scaled by 10000) so that sums are exact and independent of summation order.
+ * A table may also keep prefix sums of the red, green and blue channels,
+ * filled in the same pass, from which the average color of a block is an O(1)
+ * lookup too.
+ * The luminance of each row is computed a whole row at a time by
+ * {@link LuminanceKernel}, with SIMD instructions where available.
+ * A table takes 8 bytes per pixel, twice the image itself, and 32 with color
+ * sums, so color is only worth building for color outputs.
+ */
+public class BrightnessTable {
+	/** Red weight of the greyscale formula, scaled by 10000 */
+	static final int RED_WEIGHT = 2126;
+
+	/** Green weight of the greyscale formula, scaled by 10000 */
+	static final int GREEN_WEIGHT = 7152;
+
+	/** Blue weight of the greyscale formula, scaled by 10000 */
+	static final int BLUE_WEIGHT = 722;
+
+	/** Fixed-point luminance of a white pixel, the maximum possible value */
+	public static final int WHITE_LUMINANCE = (RED_WEIGHT + GREEN_WEIGHT + BLUE_WEIGHT) * 255;
+
+	/** Number of bands each pool thread gets when the table is built in parallel */
+	private static final int BANDS_PER_THREAD = 4;
+
+	/** Largest number of entries of a table, the largest array most JVMs allocate */
+	private static final long MAX_ENTRIES = Integer.MAX_VALUE - 8;
+
+	/** Row-major (height + 1) x (width + 1) table of luminance prefix sums */
+	private final long[] table;
+
+	/** Tables of red, green and blue prefix sums, or null without color */
+	private final long[] red;
+	private final long[] green;
+	private final long[] blue;
+
+	/** The width of the source image in pixels */
+	private final int width;
+
+	/** The height of the source image in pixels */
+	private final int height;
+
+	/**
+	 * Builds the table for the given image.
+	 *
+	 * @param image The image to build the table of
+	 */
+	public BrightnessTable(Image image) {
+		this(image, null);
+	}
+
+	/**
+	 * Builds the table for the given image, splitting the work across a pool.
+	 * Rows are prefix-summed in parallel row bands, then accumulated downwards
+	 * in parallel column bands. All sums are integers, so the table is identical
+	 * to the one built sequentially.
+	 *
+	 * @param image The image to build the table of
+	 * @param pool  The pool to build on, or null to build on the calling thread
+	 */
+	public BrightnessTable(Image image, ForkJoinPool pool) {
+		this(image, pool, false);
+	}
+
+	/**
+	 * Builds the table for the given image, optionally with color sums,
+	 * splitting the work across a pool. Color sums are taken from the same
+	 * rows of pixels as the luminance, so the image is still read only once.
+	 *
+	 * @param image     The image to build the table of
+	 * @param pool      The pool to build on, or null to build on the calling
+	 *                  thread
+	 * @param withColor Whether to also keep sums of the color channels
+	 * @throws IllegalArgumentException if the image is too large for a table
+	 */
+	public BrightnessTable(Image image, ForkJoinPool pool, boolean withColor) {
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		long entries = (long) (width + 1) * (height + 1);
+		if (entries > MAX_ENTRIES) {
+			throw new IllegalArgumentException("Image is too large for a brightness table: " +
+					width + "x" + height);
+		}
+		int size = (int) entries;
+		this.table = new long[size];
+		this.red = withColor ? new long[size] : null;
+		this.green = withColor ? new long[size] : null;
+		this.blue = withColor ? new long[size] : null;
+		if (pool == null) {
+			sumRowsAndColumns(image);
+		} else {
+			forEachBand(pool, height, (from, to) -> sumRows(image, from, to));
+			forEachBand(pool, width, (from, to) -> accumulateColumns(from + 1, to + 1));
+		}
+	}
+
+	/**
+	 * Returns the fixed-point luminance of a packed ARGB pixel.
+	 *
+	 * @param rgb The pixel packed as 0xAARRGGBB
+	 * @return The luminance, between 0 and {@link #WHITE_LUMINANCE}
+	 */
+	public static int luminance(int rgb) {
+		return ((rgb >> 16) & 0xFF) * RED_WEIGHT +
+				((rgb >> 8) & 0xFF) * GREEN_WEIGHT +
+				(rgb & 0xFF) * BLUE_WEIGHT;
+	}
+
+	/**
+	 * Converts a sum of fixed-point luminances to an average brightness.
+	 *
+	 * @param luminanceSum The sum of the luminances of the pixels
+	 * @param pixelCount   The number of pixels summed, positive
+	 * @return A double value between 0 and 1 representing the average brightness
+	 */
+	public static double toBrightness(long luminanceSum, long pixelCount) {
+		return (double) luminanceSum / pixelCount / WHITE_LUMINANCE;
+	}
+
+	/**
+	 * Returns whether this table keeps color sums.
+	 *
+	 * @return true if {@link #blockColor} is available
+	 */
+	public boolean hasColor() {
+		return red != null;
+	}
+
+	/**
+	 * Returns the width of the source image.
+	 *
+	 * @return The width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the source image.
+	 *
+	 * @return The height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the sum of the luminances of the pixels of a rectangle, clipped
+	 * to the image.
+	 *
+	 * @param top          The top row of the rectangle, may be negative
+	 * @param left         The left column of the rectangle, may be negative
+	 * @param regionHeight The height of the rectangle
+	 * @param regionWidth  The width of the rectangle
+	 * @return The luminance sum of the part of the rectangle inside the image
+	 */
+	public long luminanceSum(int top, int left, int regionHeight, int regionWidth) {
+		int y0 = clamp(top, height);
+		int y1 = clamp(top + regionHeight, height);
+		int x0 = clamp(left, width);
+		int x1 = clamp(left + regionWidth, width);
+		if (y0 >= y1 || x0 >= x1) {
+			return 0;
+		}
+		return rectangleSum(table, y0, x0, y1, x1);
+	}
+
+	/**
+	 * Computes the average brightness of a rectangular block in O(1).
+	 * Any part of the block outside the image counts as white padding, the
+	 * same way {@link BlockSplitter} pads blocks.
+	 *
+	 * @param top          The top row of the block, may be negative
+	 * @param left         The left column of the block, may be negative
+	 * @param regionHeight The height of the block, positive
+	 * @param regionWidth  The width of the block, positive
+	 * @return A double value between 0 and 1 representing the average brightness
+	 */
+	public double blockBrightness(int top, int left, int regionHeight, int regionWidth) {
+		long inside = (long) (clamp(top + regionHeight, height) - clamp(top, height)) *
+				(clamp(left + regionWidth, width) - clamp(left, width));
+		long area = (long) regionHeight * regionWidth;
+		long sum = luminanceSum(top, left, regionHeight, regionWidth) +
+				(area - inside) * WHITE_LUMINANCE;
+		return toBrightness(sum, area);
+	}
+
+	/**
+	 * Computes the average brightness of the cells of a block split into a
+	 * grid, with edges spread evenly over the block, so that cells differ in
+	 * size by at most one pixel. Padding counts as white, as in
+	 * {@link #blockBrightness}.
+	 *
+	 * @param top          The top row of the block, may be negative
+	 * @param left         The left column of the block, may be negative
+	 * @param regionHeight The height of the block, positive
+	 * @param regionWidth  The width of the block, positive
+	 * @param rows         The number of rows of cells, from 1 to regionHeight
+	 * @param columns      The number of cells in each row, from 1 to
+	 *                     regionWidth
+	 * @param cells        The array to write the rows * columns brightness
+	 *                     values to, row-major
+	 */
+	public void cellBrightness(int top, int left, int regionHeight, int regionWidth, int rows,
+			int columns, double[] cells) {
+		int tableWidth = width + 1;
+		double scale = 1.0 / WHITE_LUMINANCE;
+		int end = top;
+		for (int cy = 0; cy < rows; cy++) {
+			int start = end;
+			end = top + (cy + 1) * regionHeight / rows;
+			int up = clamp(start, height);
+			int down = clamp(end, height);
+			int insideHeight = down - up;
+			up *= tableWidth;
+			down *= tableWidth;
+			int cellHeight = end - start;
+			int right = left;
+			int x1 = clamp(right, width);
+			for (int cx = 0; cx < columns; cx++) {
+				int x0 = x1;
+				int cellLeft = right;
+				right = left + (cx + 1) * regionWidth / columns;
+				x1 = clamp(right, width);
+				long area = (long) cellHeight * (right - cellLeft);
+				long inside = (long) insideHeight * (x1 - x0);
+				long sum = table[down + x1] - table[up + x1] - table[down + x0] + table[up + x0] +
+						(area - inside) * WHITE_LUMINANCE;
+				cells[cy * columns + cx] = sum * scale / area;
+			}
+		}
+	}
+
+	/**
+	 * Computes the average color of a rectangular block in O(1). Any part of
+	 * the block outside the image counts as white, as in
+	 * {@link #blockBrightness}.
+	 *
+	 * @param top          The top row of the block, may be negative
+	 * @param left         The left column of the block, may be negative
+	 * @param regionHeight The height of the block, positive
+	 * @param regionWidth  The width of the block, positive
+	 * @return The average color packed as 0x00RRGGBB, each channel rounded
+	 * @throws IllegalStateException if the table was built without color
+	 */
+	public int blockColor(int top, int left, int regionHeight, int regionWidth) {
+		if (red == null) {
+			throw new IllegalStateException("Brightness table was built without color");
+		}
+		int y0 = clamp(top, height);
+		int y1 = clamp(top + regionHeight, height);
+		int x0 = clamp(left, width);
+		int x1 = clamp(left + regionWidth, width);
+		long area = (long) regionHeight * regionWidth;
+		long padding = (area - (long) (y1 - y0) * (x1 - x0)) * 0xFF;
+		long r = padding;
+		long g = padding;
+		long b = padding;
+		if (y0 < y1 && x0 < x1) {
+			r += rectangleSum(red, y0, x0, y1, x1);
+			g += rectangleSum(green, y0, x0, y1, x1);
+			b += rectangleSum(blue, y0, x0, y1, x1);
+		}
+		long half = area / 2;
+		return (int) ((r + half) / area) << 16 | (int) ((g + half) / area) << 8 |
+				(int) ((b + half) / area);
+	}
+
+	/*
+	 * Returns the sum of a prefix-sum table over rows [y0, y1) and columns
+	 * [x0, x1), which must lie inside the image.
+	 */
+	private long rectangleSum(long[] sums, int y0, int x0, int y1, int x1) {
+		int tableWidth = width + 1;
+		return sums[y1 * tableWidth + x1] - sums[y0 * tableWidth + x1] -
+				sums[y1 * tableWidth + x0] + sums[y0 * tableWidth + x0];
+	}
+
+	/*
+	 * Fills the table in a single pass on the calling thread.
+	 */
+	private void sumRowsAndColumns(Image image) {
+		int tableWidth = width + 1;
+		int[] row = new int[width];
+		int[] rowLuminance = new int[width];
+		for (int y = 0; y < height; y++) {
+			image.getRow(y, row, 0);
+			LuminanceKernel.luminance(row, 0, rowLuminance, 0, width);
+			int above = y * tableWidth;
+			int current = above + tableWidth;
+			long rowSum = 0;
+			for (int x = 0; x < width; x++) {
+				rowSum += rowLuminance[x];
+				table[current + x + 1] = table[above + x + 1] + rowSum;
+			}
+			if (red != null) {
+				long redSum = 0;
+				long greenSum = 0;
+				long blueSum = 0;
+				for (int x = 0; x < width; x++) {
+					int rgb = row[x];
+					redSum += (rgb >> 16) & 0xFF;
+					greenSum += (rgb >> 8) & 0xFF;
+					blueSum += rgb & 0xFF;
+					red[current + x + 1] = red[above + x + 1] + redSum;
+					green[current + x + 1] = green[above + x + 1] + greenSum;
+					blue[current + x + 1] = blue[above + x + 1] + blueSum;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Writes the running sum of each row in [from, to) into the table.
+	 */
+	private void sumRows(Image image, int from, int to) {
+		int tableWidth = width + 1;
+		int[] row = new int[width];
+		int[] rowLuminance = new int[width];
+		for (int y = from; y < to; y++) {
+			image.getRow(y, row, 0);
+			LuminanceKernel.luminance(row, 0, rowLuminance, 0, width);
+			int current = (y + 1) * tableWidth + 1;
+			long rowSum = 0;
+			for (int x = 0; x < width; x++) {
+				rowSum += rowLuminance[x];
+				table[current + x] = rowSum;
+			}
+			if (red != null) {
+				long redSum = 0;
+				long greenSum = 0;
+				long blueSum = 0;
+				for (int x = 0; x < width; x++) {
+					int rgb = row[x];
+					redSum += (rgb >> 16) & 0xFF;
+					greenSum += (rgb >> 8) & 0xFF;
+					blueSum += rgb & 0xFF;
+					red[current + x] = redSum;
+					green[current + x] = greenSum;
+					blue[current + x] = blueSum;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Adds each row of running sums to the one below it, for table columns in
+	 * [from, to).
+	 */
+	private void accumulateColumns(int from, int to) {
+		accumulateColumns(table, from, to);
+		if (red != null) {
+			accumulateColumns(red, from, to);
+			accumulateColumns(green, from, to);
+			accumulateColumns(blue, from, to);
+		}
+	}
+
+	/*
+	 * Adds each row of running sums of one table to the one below it, for
+	 * table columns in [from, to).
+	 */
+	private void accumulateColumns(long[] sums, int from, int to) {
+		int tableWidth = width + 1;
+		for (int y = 2; y <= height; y++) {
+			int current = y * tableWidth;
+			int above = current - tableWidth;
+			for (int x = from; x < to; x++) {
+				sums[current + x] += sums[above + x];
+			}
+		}
+	}
+
+	/*
+	 * Runs an action over [0, count) split into bands on the given pool, and
+	 * waits for all of them.
+	 */
+	private static void forEachBand(ForkJoinPool pool, int count, BandAction action) {
+		int bands = Math.max(1, Math.min(count, pool.getParallelism() * BANDS_PER_THREAD));
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(bands);
+		for (int i = 0; i < bands; i++) {
+			int from = (int) ((long) count * i / bands);
+			int to = (int) ((long) count * (i + 1) / bands);
+			tasks.add(ForkJoinTask.adapt(() -> action.run(from, to)));
+		}
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+	}
+
+	/*
+	 * A unit of work over a half-open range of rows or columns.
+	 */
+	private interface BandAction {
+		void run(int from, int to);
+	}
+
+	/*
+	 * Clamps a coordinate to [0, bound].
+	 */
+	private static int clamp(int value, int bound) {
+		return Math.max(0, Math.min(value, bound));
+	}
+}
@@ -0,0 +1,93 @@
+package image;
+
+import java.awt.Rectangle;
+
+/**
+ * One frame of an animation or frame sequence: its fully composed pixels,
+ * how long it is shown, and, when known, the only region in which it may
+ * differ from the previous frame.
+ */
+public class Frame {
+	private final int[] pixels;
+	private final int width;
+	private final int height;
+	private final int delayMillis;
+	private final Rectangle changedRegion;
+
+	/**
+	 * Constructs a frame that takes ownership of packed ARGB pixel data.
+	 *
+	 * @param pixels        Row-major packed ARGB pixels, of length width * height
+	 * @param width         The width of the frame in pixels
+	 * @param height        The height of the frame in pixels
+	 * @param delayMillis   How long the frame is shown, in milliseconds
+	 * @param changedRegion The region outside of which the frame equals the
+	 *                      previous one, or null if unknown
+	 */
+	public Frame(int[] pixels, int width, int height, int delayMillis, Rectangle changedRegion) {
+		if (pixels.length != width * height) {
+			throw new IllegalArgumentException("Pixel array length " + pixels.length +
+					" does not match " + width + "x" + height);
+		}
+		this.pixels = pixels;
+		this.width = width;
+		this.height = height;
+		this.delayMillis = delayMillis;
+		this.changedRegion = changedRegion;
+	}
+
+	/**
+	 * Returns the pixels of the frame. The array is shared and must not be
+	 * modified.
+	 *
+	 * @return Row-major packed ARGB pixels
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	/**
+	 * Returns the width of the frame.
+	 *
+	 * @return The width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the frame.
+	 *
+	 * @return The height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns how long the frame is shown.
+	 *
+	 * @return The delay in milliseconds
+	 */
+	public int getDelayMillis() {
+		return delayMillis;
+	}
+
+	/**
+	 * Returns the region outside of which the frame equals the previous one.
+	 *
+	 * @return The region, or null if the whole frame may have changed
+	 */
+	public Rectangle getChangedRegion() {
+		return changedRegion;
+	}
+
+	/**
+	 * Returns the frame as an image sharing its pixels.
+	 *
+	 * @return The image
+	 */
+	public Image toImage() {
+		return new Image(pixels, width, height);
+	}
+}
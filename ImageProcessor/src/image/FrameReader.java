@@ -0,0 +1,318 @@
+package image;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the frames of an animated GIF, or of a directory of numbered still
+ * images, one at a time.
+ * GIF frames are composed the way a viewer shows them: each frame is drawn
+ * over the previous canvas at its offset, transparent pixels keep what is
+ * underneath, and the previous frame's disposal method (restore to background
+ * or to the previous canvas) is applied first. Each GIF frame reports the
+ * region it may have changed, so consumers can skip the rest. Directory
+ * frames are ordered by the number in their names and report no region.
+ * Pixels are made opaque the way {@link Image#Image(String)} does.
+ */
+public class FrameReader implements AutoCloseable {
+	/** Delay of frames that do not specify one, in milliseconds */
+	public static final int DEFAULT_DELAY_MILLIS = 100;
+
+	private static final int OPAQUE = 0xFF000000;
+	private static final int TRANSPARENT = 0;
+	private static final String GIF_IMAGE_FORMAT = "javax_imageio_gif_image_1.0";
+	private static final String GIF_STREAM_FORMAT = "javax_imageio_gif_stream_1.0";
+	private static final String DISPOSE_TO_BACKGROUND = "restoreToBackgroundColor";
+	private static final String DISPOSE_TO_PREVIOUS = "restoreToPrevious";
+	private static final int MILLIS_PER_GIF_TICK = 10;
+	private static final Pattern NUMBER = Pattern.compile("\\d+");
+	private static final String[] IMAGE_EXTENSIONS = {".gif", ".png", ".jpg", ".jpeg", ".bmp"};
+
+	private final int defaultDelayMillis;
+
+	// Directory source
+	private final File[] files;
+
+	// Animated image source
+	private final ImageInputStream input;
+	private final ImageReader reader;
+
+	private int index = 0;
+	private int[] canvas;
+	private int canvasWidth;
+	private int canvasHeight;
+	/** Area to dispose of before drawing the next frame, or null */
+	private Rectangle disposeRegion;
+	/** Canvas to restore before drawing the next frame, or null */
+	private int[] restoreCanvas;
+
+	/**
+	 * Opens a frame source: a directory of images, or an image file whose
+	 * frames, if it has several, are read in order.
+	 *
+	 * @param path               The directory or file
+	 * @param defaultDelayMillis The delay of frames that do not specify one
+	 * @throws IOException If the source cannot be opened
+	 */
+	public FrameReader(String path, int defaultDelayMillis) throws IOException {
+		this.defaultDelayMillis = defaultDelayMillis;
+		File source = new File(path);
+		if (source.isDirectory()) {
+			File[] listed = source.listFiles(FrameReader::isImageFile);
+			if (listed == null || listed.length == 0) {
+				throw new IOException("No frames in " + path);
+			}
+			Arrays.sort(listed, FrameReader::compareFrameNames);
+			this.files = listed;
+			this.input = null;
+			this.reader = null;
+			return;
+		}
+		this.files = null;
+		this.input = ImageIO.createImageInputStream(source);
+		if (input == null) {
+			throw new IOException("Cannot open image: " + path);
+		}
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext()) {
+			input.close();
+			throw new IOException("Unsupported image format: " + path);
+		}
+		this.reader = readers.next();
+		reader.setInput(input, true, false);
+	}
+
+	/**
+	 * Reads the next frame.
+	 *
+	 * @return The frame, or null after the last one
+	 * @throws IOException If the frame cannot be read
+	 */
+	public Frame next() throws IOException {
+		if (files != null) {
+			return nextFile();
+		}
+		BufferedImage piece;
+		try {
+			piece = reader.read(index);
+		} catch (IndexOutOfBoundsException e) {
+			return null;
+		}
+		Node metadata = imageMetadata(reader.getImageMetadata(index));
+		Node descriptor = child(metadata, "ImageDescriptor");
+		Node control = child(metadata, "GraphicControlExtension");
+		int left = intAttribute(descriptor, "imageLeftPosition", 0);
+		int top = intAttribute(descriptor, "imageTopPosition", 0);
+		int delay = intAttribute(control, "delayTime", 0) * MILLIS_PER_GIF_TICK;
+		String disposal = attribute(control, "disposalMethod");
+		if (index == 0) {
+			Node screen = child(streamMetadata(), "LogicalScreenDescriptor");
+			canvasWidth = Math.max(intAttribute(screen, "logicalScreenWidth", 0),
+					left + piece.getWidth());
+			canvasHeight = Math.max(intAttribute(screen, "logicalScreenHeight", 0),
+					top + piece.getHeight());
+			canvas = new int[canvasWidth * canvasHeight];
+		}
+
+		// Undo the previous frame as its disposal method asks
+		Rectangle changed = null;
+		if (restoreCanvas != null) {
+			System.arraycopy(restoreCanvas, 0, canvas, 0, canvas.length);
+			restoreCanvas = null;
+		} else if (disposeRegion != null) {
+			fill(disposeRegion, TRANSPARENT);
+		}
+		Rectangle region = new Rectangle(left, top, piece.getWidth(), piece.getHeight())
+				.intersection(new Rectangle(0, 0, canvasWidth, canvasHeight));
+		if (index > 0) {
+			changed = disposeRegion == null ? region : region.union(disposeRegion);
+		}
+		disposeRegion = null;
+		if (DISPOSE_TO_PREVIOUS.equals(disposal)) {
+			restoreCanvas = canvas.clone();
+			disposeRegion = region;
+		} else if (DISPOSE_TO_BACKGROUND.equals(disposal)) {
+			disposeRegion = region;
+		}
+		draw(piece, region, left, top);
+		index++;
+
+		int[] pixels = canvas.clone();
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] |= OPAQUE;
+		}
+		return new Frame(pixels, canvasWidth, canvasHeight,
+				delay > 0 ? delay : defaultDelayMillis, changed);
+	}
+
+	/**
+	 * Closes the source.
+	 *
+	 * @throws IOException If the source cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (reader != null) {
+			reader.dispose();
+			input.close();
+		}
+	}
+
+	/*
+	 * Reads the next file of a directory source.
+	 */
+	private Frame nextFile() throws IOException {
+		if (index >= files.length) {
+			return null;
+		}
+		Image image = new Image(files[index++].getPath());
+		int[] pixels = new int[image.getWidth() * image.getHeight()];
+		image.getRegion(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+		return new Frame(pixels, image.getWidth(), image.getHeight(), defaultDelayMillis, null);
+	}
+
+	/*
+	 * Draws the opaque pixels of a frame onto the canvas, clipped to region.
+	 */
+	private void draw(BufferedImage piece, Rectangle region, int left, int top) {
+		if (region.isEmpty()) {
+			return;
+		}
+		int[] row = new int[region.width];
+		for (int y = region.y; y < region.y + region.height; y++) {
+			piece.getRGB(region.x - left, y - top, region.width, 1, row, 0, region.width);
+			int start = y * canvasWidth + region.x;
+			for (int x = 0; x < region.width; x++) {
+				if ((row[x] >>> 24) != 0) {
+					canvas[start + x] = row[x];
+				}
+			}
+		}
+	}
+
+	/*
+	 * Fills a region of the canvas, clipped to it, with one value.
+	 */
+	private void fill(Rectangle region, int value) {
+		for (int y = region.y; y < region.y + region.height; y++) {
+			int start = y * canvasWidth + region.x;
+			Arrays.fill(canvas, start, start + region.width, value);
+		}
+	}
+
+	/*
+	 * Returns the GIF metadata tree of a frame, or null for other formats.
+	 */
+	private static Node imageMetadata(IIOMetadata metadata) {
+		if (metadata == null || !GIF_IMAGE_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+			return null;
+		}
+		return metadata.getAsTree(GIF_IMAGE_FORMAT);
+	}
+
+	/*
+	 * Returns the GIF stream metadata tree, or null for other formats.
+	 */
+	private Node streamMetadata() throws IOException {
+		IIOMetadata metadata = reader.getStreamMetadata();
+		if (metadata == null || !GIF_STREAM_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+			return null;
+		}
+		return metadata.getAsTree(GIF_STREAM_FORMAT);
+	}
+
+	/*
+	 * Returns the first child of a metadata node with the given name, or null.
+	 */
+	private static Node child(Node node, String name) {
+		if (node == null) {
+			return null;
+		}
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeName().equals(name)) {
+				return child;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Returns an attribute of a metadata node, or null.
+	 */
+	private static String attribute(Node node, String name) {
+		if (node == null) {
+			return null;
+		}
+		NamedNodeMap attributes = node.getAttributes();
+		Node attribute = attributes == null ? null : attributes.getNamedItem(name);
+		return attribute == null ? null : attribute.getNodeValue();
+	}
+
+	/*
+	 * Returns an integer attribute of a metadata node, or a default.
+	 */
+	private static int intAttribute(Node node, String name, int defaultValue) {
+		String value = attribute(node, name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/*
+	 * Accepts the image files of a directory source.
+	 */
+	private static boolean isImageFile(File file) {
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		for (String extension : IMAGE_EXTENSIONS) {
+			if (file.isFile() && name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Orders frame files by the last number in their names, so that
+	 * frame2 comes before frame10, then by name.
+	 */
+	private static int compareFrameNames(File a, File b) {
+		long numberA = lastNumber(a.getName());
+		long numberB = lastNumber(b.getName());
+		if (numberA != numberB) {
+			return Long.compare(numberA, numberB);
+		}
+		return a.getName().compareTo(b.getName());
+	}
+
+	/*
+	 * Returns the last run of digits in a name, or -1 if there is none.
+	 */
+	private static long lastNumber(String name) {
+		Matcher matcher = NUMBER.matcher(name);
+		long number = -1;
+		while (matcher.find()) {
+			String digits = matcher.group();
+			number = digits.length() > 18 ? Long.MAX_VALUE : Long.parseLong(digits);
+		}
+		return number;
+	}
+}
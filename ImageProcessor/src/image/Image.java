@@ -6,6 +6,8 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A class representing an image with color pixel data.
@@ -13,13 +15,48 @@ import java.io.IOException;
  * images.
  * It supports operations such as padding images to power-of-two dimensions
  * and accessing individual pixel colors.
+ * Pixels are stored row-major in a single flat array of packed ARGB ints, so
+ * an image costs one heap object regardless of its size.
+ * An image may also be a view (see {@link #subImage(int, int, int, int)}): a
+ * window of offset and stride over another image's array that reads as white
+ * wherever it extends past the pixels it is backed by. The power-of-two
+ * padded image is such a view too, with the backed pixels centered in it, so
+ * padding never copies the pixels.
  *
  * @author Dan Nirel
  */
 public class Image {
 
-    /** 2D array storing the color data for each pixel in the image */
-    private final Color[][] pixelArray;
+    /** Packed ARGB value of an opaque white pixel, used for padding */
+    public static final int WHITE = 0xFFFFFFFF;
+
+    /** Alpha mask forcing loaded pixels to be opaque, as java.awt.Color(int) does */
+    private static final int OPAQUE = 0xFF000000;
+
+    /** Multipliers of the fingerprint hash (from xxHash64) */
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+
+    /** Row-major packed ARGB data for each pixel in the image */
+    private final int[] pixels;
+
+    /** Index in pixels of the top-left backed pixel */
+    private final int offset;
+
+    /** Distance in pixels between the starts of two consecutive rows */
+    private final int stride;
+
+    /** Number of white columns left of the backed pixels */
+    private final int dataLeft;
+
+    /** Number of white rows above the backed pixels */
+    private final int dataTop;
+
+    /** Number of columns backed by pixels, the rest read as white */
+    private final int dataWidth;
+
+    /** Number of rows backed by pixels, the rest read as white */
+    private final int dataHeight;
 
     /** The width of the image in pixels */
     private final int width;
@@ -27,6 +64,18 @@ public class Image {
     /** The height of the image in pixels */
     private final int height;
 
+    /** Lazily built power-of-two padded version of this image */
+    private Image paddedImage;
+
+    /** Lazily built summed-area table of this image's luminance */
+    private BrightnessTable brightnessTable;
+
+    /** 64-bit hash of the dimensions and pixels, valid once hasFingerprint is set */
+    private long fingerprint;
+
+    /** Whether fingerprint has been computed */
+    private boolean hasFingerprint;
+
     /**
      * Constructs a new Image by loading it from a file.
      *
@@ -34,16 +83,31 @@ public class Image {
      * @throws IOException If the image file cannot be read
      */
     public Image(String filename) throws IOException {
-        BufferedImage im = ImageIO.read(new File(filename));
+        this(read(filename));
+    }
+
+    /**
+     * Constructs a new Image from a decoded image, such as one received over
+     * the network. The pixels are copied.
+     *
+     * @param im The decoded image
+     */
+    public Image(BufferedImage im) {
         width = im.getWidth();
         height = im.getHeight();
+        offset = 0;
+        stride = width;
+        dataLeft = 0;
+        dataTop = 0;
+        dataWidth = width;
+        dataHeight = height;
 
-        pixelArray = new Color[height][width];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                pixelArray[i][j] = new Color(im.getRGB(j, i));
-            }
+        pixels = im.getRGB(0, 0, width, height, null, 0, width);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= OPAQUE;
         }
+        fingerprint = computeFingerprint();
+        hasFingerprint = true;
     }
 
     /**
@@ -54,11 +118,65 @@ public class Image {
      * @param height     The height of the image in pixels
      */
     public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
+        this(new int[width * height], width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = pixelArray[y][x].getRGB();
+            }
+        }
+    }
+
+    /**
+     * Constructs a new Image that takes ownership of packed ARGB pixel data.
+     * The array is used as-is and must not be modified afterwards.
+     *
+     * @param pixels Row-major packed ARGB pixels, of length width * height
+     * @param width  The width of the image in pixels
+     * @param height The height of the image in pixels
+     */
+    public Image(int[] pixels, int width, int height) {
+        if (pixels.length != width * height) {
+            throw new IllegalArgumentException("Pixel array length " + pixels.length +
+                    " does not match " + width + "x" + height);
+        }
+        this.pixels = pixels;
+        this.offset = 0;
+        this.stride = width;
+        this.dataLeft = 0;
+        this.dataTop = 0;
+        this.dataWidth = width;
+        this.dataHeight = height;
         this.width = width;
         this.height = height;
     }
 
+    /*
+     * Constructs a view over another image's pixel array.
+     */
+    private Image(int[] pixels, int offset, int stride, int dataLeft, int dataTop,
+                  int dataWidth, int dataHeight, int width, int height) {
+        this.pixels = pixels;
+        this.offset = offset;
+        this.stride = stride;
+        this.dataLeft = dataLeft;
+        this.dataTop = dataTop;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.width = width;
+        this.height = height;
+    }
+
+    /*
+     * Decodes an image file.
+     */
+    private static BufferedImage read(String filename) throws IOException {
+        BufferedImage im = ImageIO.read(new File(filename));
+        if (im == null) {
+            throw new IOException("Unsupported image format: " + filename);
+        }
+        return im;
+    }
+
     /**
      * Returns the width of the image.
      *
@@ -80,12 +198,123 @@ public class Image {
     /**
      * Returns the color of a specific pixel in the image.
      *
-     * @param x The x-coordinate of the pixel
-     * @param y The y-coordinate of the pixel
+     * @param x The row of the pixel
+     * @param y The column of the pixel
      * @return The Color object representing the pixel's color
+     * @deprecated Allocates a Color on every call; use {@link #getRGB(int, int)},
+     *             which takes the same arguments and returns the packed value
      */
+    @Deprecated
     public Color getPixel(int x, int y) {
-        return pixelArray[x][y];
+        return new Color(getRGB(x, y), true);
+    }
+
+    /**
+     * Returns a 64-bit fingerprint of the image content: its dimensions and the
+     * packed value of every pixel. Images loaded from a file compute it while
+     * loading; other images compute it on the first call. Images are
+     * immutable, so the value is computed once and reused as a cache key.
+     *
+     * @return The content hash of this image
+     */
+    public synchronized long getFingerprint() {
+        if (!hasFingerprint) {
+            fingerprint = computeFingerprint();
+            hasFingerprint = true;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Returns the packed ARGB value of a specific pixel without allocating.
+     * This is the accessor to read pixels with.
+     *
+     * @param row The row of the pixel
+     * @param col The column of the pixel
+     * @return The pixel's color packed as 0xAARRGGBB
+     */
+    public int getRGB(int row, int col) {
+        int dataRow = row - dataTop;
+        int dataCol = col - dataLeft;
+        if (dataRow >= 0 && dataRow < dataHeight && dataCol >= 0 && dataCol < dataWidth) {
+            return pixels[offset + dataRow * stride + dataCol];
+        }
+        return WHITE;
+    }
+
+    /**
+     * Copies one row of packed ARGB pixels into the given array.
+     *
+     * @param row       The row to copy
+     * @param dst       The destination array
+     * @param dstOffset The index in dst to start writing at
+     */
+    public void getRow(int row, int[] dst, int dstOffset) {
+        getRegion(row, 0, width, 1, dst, dstOffset, width);
+    }
+
+    /**
+     * Copies a rectangular region of packed ARGB pixels into the given array,
+     * row-major. The region must lie inside the image; parts of it that are
+     * virtual padding are written as white.
+     *
+     * @param row          The top row of the region
+     * @param col          The left column of the region
+     * @param regionWidth  The width of the region in pixels
+     * @param regionHeight The height of the region in pixels
+     * @param dst          The destination array
+     * @param dstOffset    The index in dst of the region's top-left pixel
+     * @param dstStride    The distance in dst between the starts of two rows
+     */
+    public void getRegion(int row, int col, int regionWidth, int regionHeight,
+                          int[] dst, int dstOffset, int dstStride) {
+        // Columns [copyStart, copyEnd) of the region are backed, the rest are white
+        int copyStart = Math.min(regionWidth, Math.max(0, dataLeft - col));
+        int copyEnd = Math.max(copyStart, Math.min(regionWidth, dataLeft + dataWidth - col));
+        for (int y = 0; y < regionHeight; y++) {
+            int dstStart = dstOffset + y * dstStride;
+            int dataRow = row + y - dataTop;
+            if (dataRow < 0 || dataRow >= dataHeight || copyStart == copyEnd) {
+                Arrays.fill(dst, dstStart, dstStart + regionWidth, WHITE);
+                continue;
+            }
+            if (copyStart > 0) {
+                Arrays.fill(dst, dstStart, dstStart + copyStart, WHITE);
+            }
+            System.arraycopy(pixels, offset + dataRow * stride + col + copyStart - dataLeft,
+                    dst, dstStart + copyStart, copyEnd - copyStart);
+            if (copyEnd < regionWidth) {
+                Arrays.fill(dst, dstStart + copyEnd, dstStart + regionWidth, WHITE);
+            }
+        }
+    }
+
+    /**
+     * Returns a view of a rectangular window of this image, without copying.
+     * The window may extend past any edge of this image, in which case the
+     * part outside reads as white padding.
+     *
+     * @param row          The top row of the window, may be negative
+     * @param col          The left column of the window, may be negative
+     * @param regionWidth  The width of the window in pixels
+     * @param regionHeight The height of the window in pixels
+     * @return An Image sharing this image's pixel array
+     */
+    public Image subImage(int row, int col, int regionWidth, int regionHeight) {
+        if (regionWidth < 0 || regionHeight < 0) {
+            throw new IllegalArgumentException("Invalid window " + regionWidth + "x" +
+                    regionHeight + " at (" + row + ", " + col + ")");
+        }
+        // The backed pixels of the view, in this image's coordinates
+        int left = Math.max(col, dataLeft);
+        int top = Math.max(row, dataTop);
+        int right = Math.min(col + regionWidth, dataLeft + dataWidth);
+        int bottom = Math.min(row + regionHeight, dataTop + dataHeight);
+        if (left >= right || top >= bottom) {
+            return new Image(pixels, 0, stride, 0, 0, 0, 0, regionWidth, regionHeight);
+        }
+        return new Image(pixels, offset + (top - dataTop) * stride + (left - dataLeft), stride,
+                left - col, top - row, right - left, bottom - top, regionWidth, regionHeight);
     }
 
     /**
@@ -96,13 +325,9 @@ public class Image {
      * @throws ImageProcessingException If the image cannot be saved
      */
     public void saveImage(String fileName) {
-        BufferedImage bufferedImage = new BufferedImage(pixelArray[0].length, pixelArray.length,
+        BufferedImage bufferedImage = new BufferedImage(width, height,
                 BufferedImage.TYPE_INT_RGB);
-        for (int x = 0; x < pixelArray.length; x++) {
-            for (int y = 0; y < pixelArray[x].length; y++) {
-                bufferedImage.setRGB(y, x, pixelArray[x][y].getRGB());
-            }
-        }
+        bufferedImage.setRGB(0, 0, width, height, toPackedArray(), 0, width);
         File outputfile = new File(fileName + ".jpeg");
         try {
             ImageIO.write(bufferedImage, "jpeg", outputfile);
@@ -116,10 +341,82 @@ public class Image {
      * Pads the image so that its width and height are powers of 2.
      * The original image is centered in the padded area, with white pixels
      * filling the remaining space.
+     * The padded image is a view over this image's pixels: the padding is
+     * virtual and nothing is copied. It is built once and reused by later
+     * calls.
+     *
+     * @return An Image instance with dimensions that are powers of 2
+     */
+    public synchronized Image padToPowerOfTwo() {
+        if (paddedImage == null) {
+            paddedImage = buildPaddedImage();
+        }
+        return paddedImage;
+    }
+
+    /**
+     * Returns the summed-area table of this image's luminance, building it on
+     * the first call. Images are immutable, so the table stays valid for the
+     * lifetime of the image, or until {@link #releaseBrightnessTable()}.
      *
-     * @return A new Image instance with dimensions that are powers of 2
+     * @return The brightness table of this image
      */
-    public Image padToPowerOfTwo() {
+    public BrightnessTable getBrightnessTable() {
+        return getBrightnessTable(null);
+    }
+
+    /**
+     * Returns the summed-area table of this image's luminance, building it on
+     * the given pool if this is the first call.
+     *
+     * @param pool The pool to build the table on, or null to build it on the
+     *             calling thread
+     * @return The brightness table of this image
+     */
+    public BrightnessTable getBrightnessTable(ForkJoinPool pool) {
+        return getBrightnessTable(pool, false);
+    }
+
+    /**
+     * Returns the summed-area table of this image's luminance, optionally
+     * with color sums, building it on the given pool if needed. A table built
+     * without color is replaced by one with color the first time color is
+     * asked for, so callers that need color should ask for it first.
+     *
+     * @param pool      The pool to build the table on, or null to build it on
+     *                  the calling thread
+     * @param withColor Whether the table must keep color sums
+     * @return The brightness table of this image
+     */
+    public synchronized BrightnessTable getBrightnessTable(ForkJoinPool pool, boolean withColor) {
+        if (brightnessTable == null || (withColor && !brightnessTable.hasColor())) {
+            brightnessTable = new BrightnessTable(this, pool, withColor);
+        }
+        return brightnessTable;
+    }
+
+    /**
+     * Drops the cached brightness table, of this image and of its padded
+     * view, which take 8 bytes per pixel, or 32 with color sums. Callers that
+     * are done converting this image, or no longer need color, call this so
+     * the table does not stay as long as the image does; the next call to
+     * {@link #getBrightnessTable} builds it again.
+     */
+    public void releaseBrightnessTable() {
+        Image padded;
+        synchronized (this) {
+            brightnessTable = null;
+            padded = paddedImage;
+        }
+        if (padded != null && padded != this) {
+            padded.releaseBrightnessTable();
+        }
+    }
+
+    /*
+     * Builds a view of this image padded to power-of-two dimensions.
+     */
+    private Image buildPaddedImage() {
         int currentWidth = getWidth();
         int currentHeight = getHeight();
         int newWidth = nextPowerOfTwo(currentWidth);
@@ -132,26 +429,49 @@ public class Image {
         int padLeft = (newWidth - currentWidth) / 2;
         int padTop = (newHeight - currentHeight) / 2;
 
-        Color[][] newPixels = new Color[newHeight][newWidth];
-        // Fill with white
-        for (int y = 0; y < newHeight; y++) {
-            for (int x = 0; x < newWidth; x++) {
-                newPixels[y][x] = new Color(255, 255, 255);
+        return new Image(pixels, offset, stride, dataLeft + padLeft, dataTop + padTop,
+                dataWidth, dataHeight, newWidth, newHeight);
+    }
+
+    /*
+     * Hashes the dimensions and pixels row by row, mixing each pixel in the way
+     * xxHash64 mixes its input lanes.
+     */
+    private long computeFingerprint() {
+        long hash = PRIME_1 * width + height;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            getRow(y, row, 0);
+            for (int x = 0; x < width; x++) {
+                hash = Long.rotateLeft(hash + (row[x] & 0xFFFFFFFFL) * PRIME_2, 31) * PRIME_1;
             }
         }
-        // Copy old image
-        for (int y = 0; y < currentHeight; y++) {
-            for (int x = 0; x < currentWidth; x++) {
-                newPixels[y + padTop][x + padLeft] = getPixel(y, x);
-            }
+        // Final avalanche, so that nearby inputs spread over all 64 bits
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_1;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    /*
+     * Returns the pixels as a dense row-major array, copying only for views.
+     */
+    private int[] toPackedArray() {
+        if (offset == 0 && stride == width && dataLeft == 0 && dataTop == 0 && dataWidth == width &&
+                dataHeight == height && pixels.length == width * height) {
+            return pixels;
         }
-        return new Image(newPixels, newWidth, newHeight);
+        int[] packed = new int[width * height];
+        getRegion(0, 0, width, height, packed, 0, width);
+        return packed;
     }
 
     /*
      * Checks if a number is a power of 2.
      */
-    private boolean isPowerOfTwo(int x) {
+    private static boolean isPowerOfTwo(int x) {
         return (x > 0 && (x & (x - 1)) == 0);
     }
 
@@ -160,7 +480,7 @@ public class Image {
      * number.
      * If the input is already a power of 2, returns the input.
      */
-    private int nextPowerOfTwo(int x) {
+    static int nextPowerOfTwo(int x) {
         if (isPowerOfTwo(x)) {
             return x;
         }
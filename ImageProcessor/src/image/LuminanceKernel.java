@@ -0,0 +1,123 @@
+package image;
+
+import java.util.Optional;
+
+/**
+ * Computes the fixed-point luminance of runs of packed ARGB pixels, a row or
+ * a block at a time, with the same weights as {@link BrightnessTable}.
+ * When the JVM runs with the jdk.incubator.vector module
+ * ("--add-modules jdk.incubator.vector") and the CPU has SIMD registers of
+ * more than one int, the work is done with the Vector API; otherwise it falls
+ * back to a scalar loop. Both give identical results, since all arithmetic
+ * is exact integer math. The choice is made once, when the class is loaded;
+ * setting the system property "image.vector" to false forces the scalar
+ * loop.
+ */
+public final class LuminanceKernel {
+	/** Name of the module holding the Vector API */
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+	/** System property that disables the vector kernel when set to false */
+	private static final String VECTOR_PROPERTY = "image.vector";
+
+	/** Whether the vector kernel is used */
+	private static final boolean VECTORIZED = detectVectorSupport();
+
+	private LuminanceKernel() {
+	}
+
+	/**
+	 * Returns whether the Vector API kernel is in use.
+	 *
+	 * @return true if luminance is computed with SIMD instructions
+	 */
+	public static boolean isVectorized() {
+		return VECTORIZED;
+	}
+
+	/**
+	 * Writes the luminance of every pixel of a run into an int array.
+	 *
+	 * @param pixels    Packed ARGB pixels
+	 * @param offset    The index in pixels of the first pixel
+	 * @param dst       The destination array
+	 * @param dstOffset The index in dst to start writing at
+	 * @param length    The number of pixels
+	 */
+	public static void luminance(int[] pixels, int offset, int[] dst, int dstOffset, int length) {
+		if (VECTORIZED) {
+			VectorLuminanceKernel.luminance(pixels, offset, dst, dstOffset, length);
+		} else {
+			luminanceScalar(pixels, offset, dst, dstOffset, length);
+		}
+	}
+
+	/**
+	 * Returns the sum of the luminance of every pixel of a run, such as a row
+	 * or a whole block copied out with {@link Image#getRegion}.
+	 *
+	 * @param pixels Packed ARGB pixels
+	 * @param offset The index in pixels of the first pixel
+	 * @param length The number of pixels
+	 * @return The sum of the fixed-point luminances
+	 */
+	public static long sum(int[] pixels, int offset, int length) {
+		if (VECTORIZED) {
+			return VectorLuminanceKernel.sum(pixels, offset, length);
+		}
+		return sumScalar(pixels, offset, length);
+	}
+
+	/**
+	 * Writes the luminance of every pixel of a run with the scalar loop,
+	 * whether or not the vector kernel is available.
+	 *
+	 * @param pixels    Packed ARGB pixels
+	 * @param offset    The index in pixels of the first pixel
+	 * @param dst       The destination array
+	 * @param dstOffset The index in dst to start writing at
+	 * @param length    The number of pixels
+	 */
+	public static void luminanceScalar(int[] pixels, int offset, int[] dst, int dstOffset,
+			int length) {
+		for (int i = 0; i < length; i++) {
+			dst[dstOffset + i] = BrightnessTable.luminance(pixels[offset + i]);
+		}
+	}
+
+	/**
+	 * Returns the luminance sum of a run with the scalar loop, whether or not
+	 * the vector kernel is available.
+	 *
+	 * @param pixels Packed ARGB pixels
+	 * @param offset The index in pixels of the first pixel
+	 * @param length The number of pixels
+	 * @return The sum of the fixed-point luminances
+	 */
+	public static long sumScalar(int[] pixels, int offset, int length) {
+		long sum = 0;
+		for (int i = offset; i < offset + length; i++) {
+			sum += BrightnessTable.luminance(pixels[i]);
+		}
+		return sum;
+	}
+
+	/*
+	 * Checks that the Vector API module is loaded, that it is not disabled,
+	 * and that a vector holds more than one int on this CPU.
+	 */
+	private static boolean detectVectorSupport() {
+		if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))) {
+			return false;
+		}
+		Optional<Module> module = ModuleLayer.boot().findModule(VECTOR_MODULE);
+		if (module.isEmpty()) {
+			return false;
+		}
+		try {
+			return VectorLuminanceKernel.lanes() > 1;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+}
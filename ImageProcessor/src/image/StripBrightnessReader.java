@@ -0,0 +1,238 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Computes the block brightness grid of an image file without holding the
+ * decoded image in memory.
+ * The image is decoded in horizontal strips through
+ * {@link ImageReadParam#setSourceRegion}, each strip small enough to fit a
+ * fixed pixel budget, and the luminance of every pixel is added straight into
+ * the sum of the block it falls in. Only one row of block sums and one strip
+ * are held at a time, so the memory used depends on the budget and the
+ * resolution, not on the size of the image.
+ * The block grid is the one {@link BlockSplitter#splitIntoBlocks} produces on
+ * the image padded to powers of two, and sums are kept in the fixed point of
+ * {@link BrightnessTable}, so without subsampling the grid is identical to the
+ * one computed from a loaded {@link Image}.
+ * Readers of sequential formats such as JPEG and PNG decode from the start of
+ * the file for every strip, so a bigger budget trades memory for decode time.
+ */
+public class StripBrightnessReader implements AutoCloseable {
+	/** Default number of decoded pixels held in one strip (64 MB of ARGB) */
+	public static final int DEFAULT_STRIP_PIXELS = 16 * 1024 * 1024;
+
+	private final ImageInputStream input;
+	private final ImageReader reader;
+	private final int width;
+	private final int height;
+	private final int stripPixels;
+
+	/**
+	 * Opens an image file with the default strip budget. Only the header is
+	 * read.
+	 *
+	 * @param filename The path to the image file
+	 * @throws IOException If the file cannot be read or its format is unsupported
+	 */
+	public StripBrightnessReader(String filename) throws IOException {
+		this(filename, DEFAULT_STRIP_PIXELS);
+	}
+
+	/**
+	 * Opens an image file. Only the header is read.
+	 *
+	 * @param filename    The path to the image file
+	 * @param stripPixels The number of decoded pixels to hold at a time, at
+	 *                    least one row
+	 * @throws IOException If the file cannot be read or its format is unsupported
+	 */
+	public StripBrightnessReader(String filename, int stripPixels) throws IOException {
+		if (stripPixels < 1) {
+			throw new IllegalArgumentException("Strip budget must be positive: " + stripPixels);
+		}
+		this.input = ImageIO.createImageInputStream(new File(filename));
+		if (input == null) {
+			throw new IOException("Cannot open image: " + filename);
+		}
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext()) {
+			input.close();
+			throw new IOException("Unsupported image format: " + filename);
+		}
+		this.reader = readers.next();
+		try {
+			reader.setInput(input, true, true);
+			this.width = reader.getWidth(0);
+			this.height = reader.getHeight(0);
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+		this.stripPixels = stripPixels;
+	}
+
+	/**
+	 * Returns the width of the image.
+	 *
+	 * @return The width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the image.
+	 *
+	 * @return The height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Decodes the image strip by strip and computes the brightness of every
+	 * block of a blocksPerRow x blocksPerRow grid over the padded image.
+	 * With a subsampling factor above 1 only every n-th pixel of every n-th row
+	 * is decoded, and each block's average is estimated from its samples; a
+	 * block sliver too thin to hold a sample counts as white.
+	 *
+	 * @param blocksPerRow The number of blocks in each row and column, positive
+	 * @param subsampling  The distance between decoded pixels, 1 to decode all
+	 * @return The brightness of each block, indexed [row][column]
+	 * @throws IOException If the image cannot be decoded
+	 * @throws IllegalArgumentException If the grid is finer than the padded
+	 *                                  image or subsampling is not positive
+	 */
+	public double[][] readBlockBrightness(int blocksPerRow, int subsampling) throws IOException {
+		if (subsampling < 1) {
+			throw new IllegalArgumentException("Invalid subsampling " + subsampling);
+		}
+		BlockGrid grid = BlockGrid.padded(width, height, blocksPerRow);
+
+		// Block column of every decoded column, or -1 past the grid
+		int sampledWidth = (width + subsampling - 1) / subsampling;
+		int[] blockColumn = new int[sampledWidth];
+		Arrays.fill(blockColumn, -1);
+		for (int bx = 0; bx < blocksPerRow; bx++) {
+			int left = Math.max(0, grid.getLeft(bx));
+			int right = Math.min(width, grid.getLeft(bx) + grid.getBlockWidth(bx));
+			for (int c = (left + subsampling - 1) / subsampling; c * subsampling < right; c++) {
+				blockColumn[c] = bx;
+			}
+		}
+
+		double[][] brightness = new double[blocksPerRow][];
+		long[] sums = new long[blocksPerRow];
+		long[] counts = new long[blocksPerRow];
+		int currentRow = -1;
+		int by = 0;
+
+		// Rows below the last row of blocks are never decoded
+		int gridHeight = Math.min(height, bottom(grid, blocksPerRow - 1));
+		int stripRows = Math.max(1, stripPixels / sampledWidth) * subsampling;
+		ImageReadParam param = reader.getDefaultReadParam();
+		int[] row = new int[sampledWidth];
+		int[] rowLuminance = new int[sampledWidth];
+		for (int top = 0; top < gridHeight; top += stripRows) {
+			int rows = Math.min(stripRows, gridHeight - top);
+			param.setSourceRegion(new Rectangle(0, top, width, rows));
+			param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+			BufferedImage strip = reader.read(0, param);
+			for (int r = 0; r < strip.getHeight(); r++) {
+				while (bottom(grid, by) <= top + r * subsampling) {
+					by++;
+				}
+				if (by != currentRow) {
+					if (currentRow >= 0) {
+						brightness[currentRow] = finish(grid, currentRow, sums, counts);
+					}
+					currentRow = by;
+				}
+				strip.getRGB(0, r, sampledWidth, 1, row, 0, sampledWidth);
+				LuminanceKernel.luminance(row, 0, rowLuminance, 0, sampledWidth);
+				for (int c = 0; c < sampledWidth; c++) {
+					int bx = blockColumn[c];
+					if (bx >= 0) {
+						sums[bx] += rowLuminance[c];
+						counts[bx]++;
+					}
+				}
+			}
+		}
+		if (currentRow >= 0) {
+			brightness[currentRow] = finish(grid, currentRow, sums, counts);
+		}
+		// Rows the image does not reach are padding only
+		for (int y = 0; y < blocksPerRow; y++) {
+			if (brightness[y] == null) {
+				brightness[y] = finish(grid, y, sums, counts);
+			}
+		}
+		return brightness;
+	}
+
+	/**
+	 * Releases the reader and closes the file.
+	 *
+	 * @throws IOException If the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (reader != null) {
+			reader.dispose();
+		}
+		input.close();
+	}
+
+	/*
+	 * Converts the sums of one row of blocks to brightness values and resets
+	 * them for the next row. The part of each block outside the image is white
+	 * padding.
+	 */
+	private double[] finish(BlockGrid grid, int by, long[] sums, long[] counts) {
+		double[] brightness = new double[sums.length];
+		long insideRows = overlap(grid.getTop(by), grid.getBlockHeight(by), height);
+		for (int bx = 0; bx < sums.length; bx++) {
+			long area = (long) grid.getBlockHeight(by) * grid.getBlockWidth(bx);
+			long inside = insideRows * overlap(grid.getLeft(bx), grid.getBlockWidth(bx), width);
+			long padding = (area - inside) * BrightnessTable.WHITE_LUMINANCE;
+			if (counts[bx] == inside) {
+				// Every pixel was decoded, so the sum is exact
+				brightness[bx] = BrightnessTable.toBrightness(sums[bx] + padding, area);
+			} else if (counts[bx] == 0) {
+				brightness[bx] = 1.0;
+			} else {
+				double mean = (double) sums[bx] / counts[bx];
+				brightness[bx] = (inside * mean + padding) / area /
+						BrightnessTable.WHITE_LUMINANCE;
+			}
+			sums[bx] = 0;
+			counts[bx] = 0;
+		}
+		return brightness;
+	}
+
+	/*
+	 * Returns the pixel row just below a row of blocks.
+	 */
+	private static int bottom(BlockGrid grid, int by) {
+		return grid.getTop(by) + grid.getBlockHeight(by);
+	}
+
+	/*
+	 * Returns the length of [start, start + length) inside [0, bound).
+	 */
+	private static long overlap(int start, int length, int bound) {
+		return Math.max(0, Math.min(start + length, bound) - Math.max(start, 0));
+	}
+}
@@ -0,0 +1,82 @@
+package image;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Vector API implementation of {@link LuminanceKernel}. This class is
+ * only loaded once the kernel has found the jdk.incubator.vector module, so
+ * the rest of the code runs without it.
+ * Each lane unpacks one pixel with shifts and masks and applies the fixed-point
+ * weights; the tail that does not fill a vector is done with the scalar
+ * formula.
+ */
+final class VectorLuminanceKernel {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+	/**
+	 * Number of vectors that can be added into one int accumulator before a
+	 * lane could overflow, even with every pixel white and every lane summed.
+	 */
+	private static final int VECTORS_PER_REDUCTION =
+			Integer.MAX_VALUE / BrightnessTable.WHITE_LUMINANCE / SPECIES.length();
+
+	private VectorLuminanceKernel() {
+	}
+
+	/*
+	 * Returns the number of ints in a vector.
+	 */
+	static int lanes() {
+		return SPECIES.length();
+	}
+
+	/*
+	 * Writes the luminance of every pixel of a run into dst.
+	 */
+	static void luminance(int[] pixels, int offset, int[] dst, int dstOffset, int length) {
+		int vectorEnd = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < vectorEnd; i += SPECIES.length()) {
+			luminance(IntVector.fromArray(SPECIES, pixels, offset + i)).intoArray(dst, dstOffset + i);
+		}
+		for (; i < length; i++) {
+			dst[dstOffset + i] = BrightnessTable.luminance(pixels[offset + i]);
+		}
+	}
+
+	/*
+	 * Returns the luminance sum of a run. Lanes are added as ints and reduced
+	 * into the long total often enough that they cannot overflow.
+	 */
+	static long sum(int[] pixels, int offset, int length) {
+		int vectorEnd = SPECIES.loopBound(length);
+		long sum = 0;
+		int i = 0;
+		while (i < vectorEnd) {
+			int chunkEnd = Math.min(vectorEnd, i + VECTORS_PER_REDUCTION * SPECIES.length());
+			IntVector acc = IntVector.zero(SPECIES);
+			for (; i < chunkEnd; i += SPECIES.length()) {
+				acc = acc.add(luminance(IntVector.fromArray(SPECIES, pixels, offset + i)));
+			}
+			sum += acc.reduceLanes(VectorOperators.ADD);
+		}
+		for (; i < length; i++) {
+			sum += BrightnessTable.luminance(pixels[offset + i]);
+		}
+		return sum;
+	}
+
+	/*
+	 * Returns the fixed-point luminance of every lane of packed pixels.
+	 */
+	private static IntVector luminance(IntVector rgb) {
+		IntVector red = rgb.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+		IntVector green = rgb.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+		IntVector blue = rgb.and(0xFF);
+		return red.mul(BrightnessTable.RED_WEIGHT)
+				.add(green.mul(BrightnessTable.GREEN_WEIGHT))
+				.add(blue.mul(BrightnessTable.BLUE_WEIGHT));
+	}
+}
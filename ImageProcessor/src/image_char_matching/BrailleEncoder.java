@@ -0,0 +1,71 @@
+package image_char_matching;
+
+/**
+ * Encodes blocks as Unicode braille patterns (U+2800 to U+28FF), whose eight
+ * dots form a 2 x 4 grid. Each block is split into 2 columns and 4 rows of
+ * sub-pixels, and a dot is raised for every sub-pixel darker than the
+ * threshold, so one character carries 8 sub-pixels instead of one
+ * brightness: 8 times the resolution for the same output size.
+ * Braille patterns need no charset: pattern U+2800 + bits has dot i raised
+ * where bit i - 1 is set, with dots 1 to 3 down the left column, 4 to 6 down
+ * the right one, and 7 and 8 on the bottom row.
+ */
+public class BrailleEncoder {
+	/** Number of rows of dots in a pattern */
+	public static final int DOT_ROWS = 4;
+
+	/** Number of columns of dots in a pattern */
+	public static final int DOT_COLUMNS = 2;
+
+	/** The pattern with no dots raised */
+	public static final char BLANK = '\u2800';
+
+	/** Default brightness below which a sub-pixel raises its dot */
+	public static final double DEFAULT_THRESHOLD = 0.5;
+
+	/** Bit of the pattern of the dot at [row][column] */
+	private static final int[][] DOT_BITS = {{0, 3}, {1, 4}, {2, 5}, {6, 7}};
+
+	private final double threshold;
+
+	/**
+	 * Constructs an encoder that raises dots for sub-pixels darker than
+	 * {@link #DEFAULT_THRESHOLD}.
+	 */
+	public BrailleEncoder() {
+		this(DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Constructs an encoder with the given threshold.
+	 *
+	 * @param threshold The brightness, between 0 and 1, below which a
+	 *                  sub-pixel raises its dot
+	 */
+	public BrailleEncoder(double threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Returns the pattern of a block.
+	 *
+	 * @param cells   The brightness of the block's sub-pixels, between 0 and
+	 *                1, row-major
+	 * @param rows    The number of rows of sub-pixels, from 1 to 4; a block
+	 *                shorter than 4 pixels has one row per pixel, repeated
+	 * @param columns The number of sub-pixels in each row, 1 or 2
+	 * @return The braille pattern
+	 */
+	public char encode(double[] cells, int rows, int columns) {
+		int bits = 0;
+		for (int y = 0; y < DOT_ROWS; y++) {
+			int from = y * rows / DOT_ROWS * columns;
+			for (int x = 0; x < DOT_COLUMNS; x++) {
+				if (cells[from + x * columns / DOT_COLUMNS] < threshold) {
+					bits |= 1 << DOT_BITS[y][x];
+				}
+			}
+		}
+		return (char) (BLANK + bits);
+	}
+}
@@ -2,6 +2,8 @@ package image_char_matching;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Inspired by, and partly copied from
@@ -9,7 +11,10 @@ import java.awt.image.BufferedImage;
  * described in the blog:
  * https://dzone.com/articles/ascii-art-generator-java
  * Adaptations made by Dan Nirel and again by Rachel Behar.
- * The class converts characters to a binary "image" (2D array of booleans).
+ * The class converts characters to a binary "image", packed into a bitset of
+ * longs: pixel (x, y) of a glyph of n x n pixels is bit y * n + x, set where the
+ * pixel is white, so a 16x16 glyph takes four longs. Packed glyphs are rendered
+ * once per resolution and kept in memory.
  */
 public class CharConverter {
     private static final double X_OFFSET_FACTOR = 0.2;
@@ -17,23 +22,143 @@ public class CharConverter {
     private static final String FONT_NAME = "Courier New";
     public static final int DEFAULT_PIXEL_RESOLUTION = 16;
 
+    /** On-disk white pixel counts for FONT_NAME at DEFAULT_PIXEL_RESOLUTION, opened on first use */
+    private static GlyphCache glyphCache;
+
+    /** Packed glyphs already rendered, by resolution and then by character */
+    private static final Map<Integer, Map<Character, long[]>> packedGlyphs = new ConcurrentHashMap<>();
+
     /**
      * Renders a given character, according to how it looks in the font specified in
      * the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
+     * The array is unpacked from {@link #convertToBitset(char)}, which is the
+     * cheaper form to keep and to analyze.
      */
     public static boolean[][] convertToBoolArray(char c) {
-        BufferedImage img = getBufferedImage(c, FONT_NAME, DEFAULT_PIXEL_RESOLUTION);
+        long[] bitset = getBitset(c, DEFAULT_PIXEL_RESOLUTION);
         boolean[][] matrix = new boolean[DEFAULT_PIXEL_RESOLUTION][DEFAULT_PIXEL_RESOLUTION];
         for (int y = 0; y < DEFAULT_PIXEL_RESOLUTION; y++) {
             for (int x = 0; x < DEFAULT_PIXEL_RESOLUTION; x++) {
-                matrix[y][x] = img.getRGB(x, y) == 0; // is the color white
+                matrix[y][x] = isWhite(bitset, DEFAULT_PIXEL_RESOLUTION, x, y);
             }
         }
         return matrix;
     }
 
+    /**
+     * Renders a character at DEFAULT_PIXEL_RESOLUTION to a packed bitset.
+     *
+     * @param c The character
+     * @return A copy of the cached bitset, four longs for 16x16 pixels
+     */
+    public static long[] convertToBitset(char c) {
+        return convertToBitset(c, DEFAULT_PIXEL_RESOLUTION);
+    }
+
+    /**
+     * Renders a character to a packed bitset of the given resolution, in
+     * the same font and layout as the default one.
+     *
+     * @param c               The character
+     * @param pixelResolution The width and height of the glyph in pixels,
+     *                        positive
+     * @return A copy of the cached bitset, of {@link #bitsetLength(int)} longs
+     */
+    public static long[] convertToBitset(char c, int pixelResolution) {
+        return getBitset(c, pixelResolution).clone();
+    }
+
+    /**
+     * Returns the number of longs in the bitset of a glyph.
+     *
+     * @param pixelResolution The width and height of the glyph in pixels
+     * @return The number of longs holding pixelResolution^2 bits
+     */
+    public static int bitsetLength(int pixelResolution) {
+        return (pixelResolution * pixelResolution + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Returns whether a pixel of a packed glyph is white.
+     *
+     * @param bitset          The packed glyph
+     * @param pixelResolution The width and height of the glyph in pixels
+     * @param x               The column of the pixel
+     * @param y               The row of the pixel
+     * @return true if the pixel is white
+     */
+    public static boolean isWhite(long[] bitset, int pixelResolution, int x, int y) {
+        int bit = y * pixelResolution + x;
+        return (bitset[bit >>> 6] & 1L << bit) != 0;
+    }
+
+    /**
+     * Returns the number of white pixels of a packed glyph.
+     *
+     * @param bitset The packed glyph
+     * @return The number of set bits
+     */
+    public static int countWhitePixels(long[] bitset) {
+        int count = 0;
+        for (long word : bitset) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of white pixels in the glyph of a character, as
+     * rendered by {@link #convertToBitset(char)}. Counts are kept in a
+     * persistent glyph cache, so each glyph is rasterized once per machine.
+     */
+    public static int countWhitePixels(char c) {
+        GlyphCache cache = getGlyphCache();
+        int count = cache.getWhiteCount(c);
+        if (count >= 0) {
+            return count;
+        }
+        count = countWhitePixels(getBitset(c, DEFAULT_PIXEL_RESOLUTION));
+        cache.putWhiteCount(c, count);
+        return count;
+    }
+
+    /*
+     * Returns the cached bitset of a glyph, rendering it on first use. The
+     * array is shared and must not be modified.
+     */
+    private static long[] getBitset(char c, int pixelResolution) {
+        if (pixelResolution < 1) {
+            throw new IllegalArgumentException("Invalid glyph resolution " + pixelResolution);
+        }
+        return packedGlyphs.computeIfAbsent(pixelResolution, r -> new ConcurrentHashMap<>())
+                .computeIfAbsent(c, key -> render(key, pixelResolution));
+    }
+
+    /*
+     * Renders a glyph and packs its white pixels, row by row, into a bitset.
+     */
+    private static long[] render(char c, int pixelResolution) {
+        BufferedImage img = getBufferedImage(c, FONT_NAME, pixelResolution);
+        int[] pixels = img.getRGB(0, 0, pixelResolution, pixelResolution, null, 0, pixelResolution);
+        long[] bitset = new long[bitsetLength(pixelResolution)];
+        for (int i = 0; i < pixels.length; i++) {
+            if (pixels[i] == 0) { // is the color white
+                bitset[i >>> 6] |= 1L << i;
+            }
+        }
+        return bitset;
+    }
+
+    private static synchronized GlyphCache getGlyphCache() {
+        if (glyphCache == null) {
+            Font font = new Font(FONT_NAME, Font.PLAIN, DEFAULT_PIXEL_RESOLUTION);
+            glyphCache = new GlyphCache(FONT_NAME + "|" + font.getFontName(), DEFAULT_PIXEL_RESOLUTION);
+        }
+        return glyphCache;
+    }
+
     private static BufferedImage getBufferedImage(char c, String fontName, int pixelsPerRow) {
         String charStr = Character.toString(c);
         Font font = new Font(fontName, Font.PLAIN, pixelsPerRow);
@@ -0,0 +1,197 @@
+package image_char_matching;
+
+import exceptions.EmptyCharsetException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Matches a grid of block brightness values with error diffusion: the
+ * difference between each block's brightness and the brightness of the
+ * character it is matched to is spread over the blocks not matched yet, to
+ * the right and below. With a small charset this trades the bands of plain
+ * matching for a fine grain whose average follows the image.
+ * Blocks are matched row by row, left to right, so a row only needs the
+ * errors of the two rows above it and the grid can be streamed. In parallel,
+ * rows advance as a wavefront: the row below runs two column chunks behind
+ * the row above, so every block has received all of its error before it is
+ * matched, and every error is added in the same order as in a sequential
+ * pass. The result is therefore the same for every pool size.
+ */
+public final class ErrorDiffusion {
+	/** Smallest number of blocks in one wavefront step worth running in parallel */
+	private static final int MIN_PARALLEL_BLOCKS = 1024;
+
+	/**
+	 * Smallest chunk width. Chunks of two rows running side by side must be
+	 * more than the kernel's reach of two columns apart.
+	 */
+	private static final int MIN_CHUNK = 4;
+
+	/** Chunks that a row runs behind the row above it */
+	private static final int LAG = 2;
+
+	/**
+	 * The diffusion kernels: where the error of a block goes, as offsets
+	 * (rows down, columns right) and the share each one gets.
+	 */
+	public enum Kernel {
+		/** Floyd-Steinberg: the whole error, 7/16 right and 3/16, 5/16 and 1/16 below */
+		FLOYD_STEINBERG("floyd-steinberg",
+				new int[] {0, 1, 1, 1}, new int[] {1, -1, 0, 1}, new double[] {7, 3, 5, 1}, 16),
+
+		/** Atkinson: 1/8 to each of six neighbours, dropping a quarter of the error */
+		ATKINSON("atkinson",
+				new int[] {0, 0, 1, 1, 1, 2}, new int[] {1, 2, -1, 0, 1, 0},
+				new double[] {1, 1, 1, 1, 1, 1}, 8);
+
+		private final String name;
+		private final int[] rowOffsets;
+		private final int[] columnOffsets;
+		private final double[] weights;
+
+		Kernel(String name, int[] rowOffsets, int[] columnOffsets, double[] shares, double total) {
+			this.name = name;
+			this.rowOffsets = rowOffsets;
+			this.columnOffsets = columnOffsets;
+			this.weights = new double[shares.length];
+			for (int i = 0; i < shares.length; i++) {
+				weights[i] = shares[i] / total;
+			}
+		}
+
+		/**
+		 * Returns the kernel with the given name, as the shell spells it.
+		 *
+		 * @param name "floyd-steinberg" or "atkinson"
+		 * @return The kernel, or null if there is none by that name
+		 */
+		public static Kernel forName(String name) {
+			for (Kernel kernel : values()) {
+				if (kernel.name.equals(name)) {
+					return kernel;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Returns the name of the kernel, as the shell spells it.
+		 *
+		 * @return The name
+		 */
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private ErrorDiffusion() {
+	}
+
+	/**
+	 * Matches every block of a brightness grid with error diffusion. The grid
+	 * is not modified.
+	 *
+	 * @param brightness The block brightness values, indexed [row][column]
+	 * @param matcher    The matcher holding the charset and rounding mode
+	 * @param kernel     The diffusion kernel
+	 * @param pool       The pool to run the wavefront on, or null to run on
+	 *                   the calling thread
+	 * @return The matched characters, indexed [row][column]
+	 * @throws EmptyCharsetException if no characters are available for matching
+	 */
+	public static char[][] match(double[][] brightness, SubImgCharMatcher matcher, Kernel kernel,
+			ForkJoinPool pool) {
+		SubImgCharMatcher.Lookup lookup = matcher.getLookup();
+		int numRows = brightness.length;
+		int numCols = brightness[0].length;
+		double[][] values = new double[numRows][];
+		for (int row = 0; row < numRows; row++) {
+			values[row] = brightness[row].clone();
+		}
+		char[][] result = new char[numRows][numCols];
+		int parallelism = pool == null ? 1 : pool.getParallelism();
+		int chunk = Math.max(MIN_CHUNK, numCols / (LAG * parallelism));
+		if (parallelism == 1 || numRows == 1 || numCols < LAG * MIN_CHUNK ||
+				(long) numRows * numCols < MIN_PARALLEL_BLOCKS) {
+			for (int row = 0; row < numRows; row++) {
+				diffuseRow(values, result, lookup, kernel, row, 0, numCols);
+			}
+			return result;
+		}
+		int chunks = (numCols + chunk - 1) / chunk;
+		int steps = chunks + LAG * (numRows - 1);
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (int step = 0; step < steps; step++) {
+			// Rows whose chunk step - LAG * row exists, top to bottom
+			int firstRow = Math.max(0, (step - chunks + LAG) / LAG);
+			int lastRow = Math.min(numRows - 1, step / LAG);
+			int activeRows = lastRow - firstRow + 1;
+			if ((long) activeRows * chunk < MIN_PARALLEL_BLOCKS || activeRows == 1) {
+				for (int row = firstRow; row <= lastRow; row++) {
+					diffuseChunk(values, result, lookup, kernel, row, step - LAG * row, chunk);
+				}
+				continue;
+			}
+			tasks.clear();
+			int rowsPerTask = (activeRows + parallelism - 1) / parallelism;
+			for (int from = firstRow; from <= lastRow; from += rowsPerTask) {
+				int to = Math.min(lastRow, from + rowsPerTask - 1);
+				int taskStep = step;
+				int taskFrom = from;
+				tasks.add(ForkJoinTask.adapt(() -> {
+					for (int row = taskFrom; row <= to; row++) {
+						diffuseChunk(values, result, lookup, kernel, row, taskStep - LAG * row, chunk);
+					}
+				}));
+			}
+			pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		}
+		return result;
+	}
+
+	/*
+	 * Matches the blocks of one column chunk of a row.
+	 */
+	private static void diffuseChunk(double[][] values, char[][] result,
+			SubImgCharMatcher.Lookup lookup, Kernel kernel, int row, int chunkIndex, int chunk) {
+		int from = chunkIndex * chunk;
+		int to = Math.min(values[row].length, from + chunk);
+		if (chunkIndex >= 0 && from < to) {
+			diffuseRow(values, result, lookup, kernel, row, from, to);
+		}
+	}
+
+	/*
+	 * Matches blocks [from, to) of a row, left to right, pushing each error
+	 * onto the blocks the kernel names that lie inside the grid.
+	 */
+	private static void diffuseRow(double[][] values, char[][] result,
+			SubImgCharMatcher.Lookup lookup, Kernel kernel, int row, int from, int to) {
+		int numCols = values[row].length;
+		int[] columnOffsets = kernel.columnOffsets;
+		double[] weights = kernel.weights;
+		// The rows the error goes to, null below the grid
+		double[][] targets = new double[weights.length][];
+		for (int k = 0; k < weights.length; k++) {
+			int y = row + kernel.rowOffsets[k];
+			targets[k] = y < values.length ? values[y] : null;
+		}
+		double[] current = values[row];
+		char[] chars = result[row];
+		for (int col = from; col < to; col++) {
+			int index = lookup.indexOf(current[col]);
+			chars[col] = lookup.charAt(index);
+			double error = current[col] - lookup.brightnessAt(index);
+			for (int k = 0; k < weights.length; k++) {
+				int x = col + columnOffsets[k];
+				if (targets[k] != null && x >= 0 && x < numCols) {
+					targets[k][x] += error * weights[k];
+				}
+			}
+		}
+	}
+}
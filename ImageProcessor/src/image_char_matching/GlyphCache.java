@@ -0,0 +1,158 @@
+package image_char_matching;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * A persistent, memory-mapped cache of glyph metrics, so that characters are
+ * rasterized once per machine rather than once per JVM start.
+ * The cache file holds, for every char, the number of white pixels of its
+ * rendered glyph, or -1 if it has not been rendered yet. The file name and
+ * its header record a format version, the font and the pixel resolution; a
+ * file whose header does not match is discarded and rebuilt, so changing the
+ * font (or the font the JVM resolves it to) or the resolution invalidates it.
+ * If the file cannot be created or mapped, the cache silently stays empty.
+ */
+class GlyphCache {
+    /** System property naming the directory that holds the cache files */
+    static final String DIRECTORY_PROPERTY = "ascii_art.glyph_cache_dir";
+
+    private static final int MAGIC = 0x474C5943; // "GLYC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 256;
+    private static final int MAX_FONT_ID_BYTES = HEADER_BYTES - 4 * Integer.BYTES;
+    private static final int ENTRY_COUNT = Character.MAX_VALUE + 1;
+    private static final int FILE_BYTES = HEADER_BYTES + ENTRY_COUNT * Integer.BYTES;
+    private static final int UNKNOWN = -1;
+
+    /** The mapped file, or null if the cache is disabled */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Opens, or creates, the cache file for the given font and resolution.
+     *
+     * @param fontId     Identifies the font: the requested and resolved names
+     * @param resolution The width and height of a rendered glyph, in pixels
+     */
+    GlyphCache(String fontId, int resolution) {
+        this.buffer = map(fontId, resolution);
+    }
+
+    /**
+     * Returns the cached white pixel count of a glyph.
+     *
+     * @param c The character
+     * @return The count, or -1 if it is not cached
+     */
+    int getWhiteCount(char c) {
+        if (buffer == null) {
+            return UNKNOWN;
+        }
+        return buffer.getInt(HEADER_BYTES + c * Integer.BYTES);
+    }
+
+    /**
+     * Stores the white pixel count of a glyph.
+     *
+     * @param c     The character
+     * @param count The number of white pixels of its rendered glyph
+     */
+    void putWhiteCount(char c, int count) {
+        if (buffer != null) {
+            buffer.putInt(HEADER_BYTES + c * Integer.BYTES, count);
+        }
+    }
+
+    /*
+     * Maps the cache file, rebuilding it first if it is missing or was
+     * written for another version, font or resolution.
+     */
+    private static MappedByteBuffer map(String fontId, int resolution) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY,
+                Paths.get(System.getProperty("java.io.tmpdir"), "ascii_art").toString());
+        byte[] fontBytes = fontId.getBytes(StandardCharsets.UTF_8);
+        if (fontBytes.length > MAX_FONT_ID_BYTES) {
+            fontBytes = Arrays.copyOf(fontBytes, MAX_FONT_ID_BYTES);
+        }
+        Path file = Paths.get(directory, String.format("glyphs-v%d-%s-%d.bin", VERSION,
+                fontId.replaceAll("[^A-Za-z0-9]+", "_"), resolution));
+        try {
+            if (!hasHeader(file, fontBytes, resolution)) {
+                create(file, fontBytes, resolution);
+            }
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+            }
+        } catch (IOException | RuntimeException e) {
+            Logger.getGlobal().warning(String.format(
+                    "Glyph cache \"%s\" unavailable: %s", file, e.getMessage()));
+            return null;
+        }
+    }
+
+    /*
+     * Checks whether the file exists, has the full size and a matching header.
+     */
+    private static boolean hasHeader(Path file, byte[] fontBytes, int resolution) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) != FILE_BYTES) {
+            return false;
+        }
+        ByteBuffer expected = header(fontBytes, resolution);
+        ByteBuffer actual = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (actual.hasRemaining() && channel.read(actual) >= 0) {
+                // keep reading until the header is complete
+            }
+        }
+        actual.flip();
+        return actual.equals(expected);
+    }
+
+    /*
+     * Writes a fresh cache file with every entry unknown. The file is built
+     * under a temporary name and moved into place, so other processes never
+     * map a half-written file.
+     */
+    private static void create(Path file, byte[] fontBytes, int resolution) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), "glyphs", ".tmp");
+        try {
+            ByteBuffer contents = ByteBuffer.allocate(FILE_BYTES);
+            contents.put(header(fontBytes, resolution));
+            while (contents.hasRemaining()) {
+                contents.putInt(UNKNOWN);
+            }
+            contents.flip();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (contents.hasRemaining()) {
+                    channel.write(contents);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /*
+     * Builds the header identifying the format, font and resolution.
+     */
+    private static ByteBuffer header(byte[] fontBytes, int resolution) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(resolution).putInt(fontBytes.length).put(fontBytes);
+        header.position(0);
+        return header;
+    }
+}
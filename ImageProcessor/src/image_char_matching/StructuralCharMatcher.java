@@ -0,0 +1,267 @@
+package image_char_matching;
+
+import exceptions.EmptyCharsetException;
+
+import java.util.Arrays;
+
+/**
+ * A second matching engine that looks at the shape of a block, not only its
+ * brightness, for sharper edges.
+ * Every glyph is downsampled to an 8x8 bitmap packed into one long (bit
+ * y * 8 + x set where the glyph is white). A block is described the same
+ * way: its 8x8 grid of cell brightness values, thresholded at their mean;
+ * a block smaller than 8 pixels has a cell per pixel, stretched over the
+ * bitmap.
+ * The score of a glyph is the Hamming distance between the two bitmaps, a
+ * single bitCount, as a fraction of the 64 cells, plus the difference between
+ * the block brightness and the glyph's normalized brightness, and the glyph
+ * with the lowest score wins, the lowest char on ties. Glyphs are kept sorted
+ * by brightness and searched outwards from the block brightness, stopping as
+ * soon as the brightness difference alone exceeds the best score, so only a
+ * few glyphs are scored per block.
+ * Blocks whose cells are all about equally bright have no structure to match
+ * and are left to the brightness matcher this engine wraps, with its rounding
+ * mode. The charset is that of the wrapped matcher, and changes to it are
+ * picked up on the next match.
+ */
+public class StructuralCharMatcher {
+	/** Number of cells in each row and column of a block or glyph bitmap */
+	public static final int GRID = 8;
+
+	/** Number of cells of a bitmap */
+	public static final int CELLS = GRID * GRID;
+
+	/** Score of one differing cell */
+	private static final double CELL_WEIGHT = 1.0 / CELLS;
+
+	/** Smallest brightness range of a block's cells that counts as structure */
+	private static final double MIN_CONTRAST = 0.15;
+
+	/** Glyph pixels per bitmap cell in each direction */
+	private static final int SCALE = CharConverter.DEFAULT_PIXEL_RESOLUTION / GRID;
+
+	/** White glyph pixels a cell needs to be white: half of them, rounded up */
+	private static final int WHITE_CELL_PIXELS = (SCALE * SCALE + 1) / 2;
+
+	/**
+	 * For every grid of rows x columns cells, indexed [rows - 1][columns - 1],
+	 * the bits of the 8x8 bitmap each cell stretches over
+	 */
+	private static final long[][][] CELL_MASKS = cellMasks();
+
+	/** The brightness matcher holding the charset, used for flat blocks */
+	private final SubImgCharMatcher brightnessMatcher;
+
+	/** The glyphs of the charset, compiled for a version of the matcher */
+	private volatile Glyphs glyphs = null;
+
+	/**
+	 * Constructs a structural matcher over the charset of a brightness
+	 * matcher.
+	 *
+	 * @param brightnessMatcher The matcher whose charset to use, and that
+	 *                          matches blocks without structure
+	 */
+	public StructuralCharMatcher(SubImgCharMatcher brightnessMatcher) {
+		this.brightnessMatcher = brightnessMatcher;
+	}
+
+	/**
+	 * Returns the brightness matcher this engine wraps.
+	 *
+	 * @return The brightness matcher
+	 */
+	public SubImgCharMatcher getBrightnessMatcher() {
+		return brightnessMatcher;
+	}
+
+	/**
+	 * Returns the character that best matches a block.
+	 *
+	 * @param cells      The brightness of the block's cells, between 0 and 1,
+	 *                   row-major
+	 * @param rows       The number of rows of cells, from 1 to 8; blocks
+	 *                   shorter than 8 pixels have one row per pixel
+	 * @param columns    The number of cells in each row, from 1 to 8
+	 * @param brightness The average brightness of the whole block
+	 * @return The best matching character
+	 * @throws EmptyCharsetException if no characters are available for matching
+	 */
+	public char getCharByBlock(double[] cells, int rows, int columns, double brightness) {
+		int count = rows * columns;
+		double min = cells[0];
+		double max = cells[0];
+		double total = 0;
+		for (int i = 0; i < count; i++) {
+			double cell = cells[i];
+			if (cell < min) {
+				min = cell;
+			} else if (cell > max) {
+				max = cell;
+			}
+			total += cell;
+		}
+		if (max - min < MIN_CONTRAST) {
+			return brightnessMatcher.getCharByImageBrightness(brightness);
+		}
+		double mean = total / count;
+		long[] masks = CELL_MASKS[rows - 1][columns - 1];
+		long bits = 0;
+		for (int i = 0; i < count; i++) {
+			if (cells[i] > mean) {
+				bits |= masks[i];
+			}
+		}
+		return getGlyphs().match(bits, brightness);
+	}
+
+	/**
+	 * Returns the packed 8x8 bitmap of a character's glyph: a cell is white,
+	 * its bit set, when at least half of the glyph pixels it covers are.
+	 *
+	 * @param c The character
+	 * @return The bitmap, bit y * 8 + x for cell (y, x)
+	 */
+	public static long glyphBits(char c) {
+		long[] glyph = CharConverter.convertToBitset(c);
+		long bits = 0;
+		for (int cy = 0; cy < GRID; cy++) {
+			for (int cx = 0; cx < GRID; cx++) {
+				int white = 0;
+				for (int y = cy * SCALE; y < (cy + 1) * SCALE; y++) {
+					for (int x = cx * SCALE; x < (cx + 1) * SCALE; x++) {
+						if (CharConverter.isWhite(glyph, CharConverter.DEFAULT_PIXEL_RESOLUTION, x, y)) {
+							white++;
+						}
+					}
+				}
+				if (white >= WHITE_CELL_PIXELS) {
+					bits |= 1L << (cy * GRID + cx);
+				}
+			}
+		}
+		return bits;
+	}
+
+	/*
+	 * Stretches every grid of up to 8 x 8 cells over the 8x8 bitmap, each
+	 * bitmap cell taking the grid cell it falls in.
+	 */
+	private static long[][][] cellMasks() {
+		long[][][] masks = new long[GRID][GRID][];
+		for (int rows = 1; rows <= GRID; rows++) {
+			for (int columns = 1; columns <= GRID; columns++) {
+				long[] grid = new long[rows * columns];
+				for (int y = 0; y < GRID; y++) {
+					for (int x = 0; x < GRID; x++) {
+						grid[y * rows / GRID * columns + x * columns / GRID] |= 1L << (y * GRID + x);
+					}
+				}
+				masks[rows - 1][columns - 1] = grid;
+			}
+		}
+		return masks;
+	}
+
+	/*
+	 * Returns the compiled glyphs, recompiling them if the charset of the
+	 * brightness matcher changed.
+	 */
+	private Glyphs getGlyphs() {
+		Glyphs current = glyphs;
+		int version = brightnessMatcher.getVersion();
+		if (current == null || current.version != version) {
+			current = new Glyphs(brightnessMatcher.getCharsetKey(), version);
+			glyphs = current;
+		}
+		return current;
+	}
+
+	/**
+	 * An immutable compilation of a charset: the bitmap, normalized
+	 * brightness and character of every glyph, sorted by brightness.
+	 */
+	private static final class Glyphs {
+		private final int version;
+		private final long[] bits;
+		private final double[] brightness;
+		private final char[] chars;
+
+		/**
+		 * Compiles the glyphs of a charset.
+		 *
+		 * @param charset The charset in ascending order
+		 * @param version The version of the matcher the charset was read from
+		 * @throws EmptyCharsetException if the charset is empty
+		 */
+		Glyphs(String charset, int version) {
+			if (charset.isEmpty()) {
+				throw new EmptyCharsetException();
+			}
+			this.version = version;
+			int n = charset.length();
+			int pixelCount = CharConverter.DEFAULT_PIXEL_RESOLUTION *
+					CharConverter.DEFAULT_PIXEL_RESOLUTION;
+			double[] raw = new double[n];
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < n; i++) {
+				raw[i] = (double) CharConverter.countWhitePixels(charset.charAt(i)) / pixelCount;
+				min = Math.min(min, raw[i]);
+				max = Math.max(max, raw[i]);
+			}
+			// Sort by brightness, then by char
+			Integer[] order = new Integer[n];
+			for (int i = 0; i < n; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> raw[a] != raw[b] ?
+					Double.compare(raw[a], raw[b]) : Character.compare(charset.charAt(a), charset.charAt(b)));
+			this.bits = new long[n];
+			this.brightness = new double[n];
+			this.chars = new char[n];
+			for (int i = 0; i < n; i++) {
+				char c = charset.charAt(order[i]);
+				chars[i] = c;
+				bits[i] = glyphBits(c);
+				brightness[i] = max == min ? 0.0 : (raw[order[i]] - min) / (max - min);
+			}
+		}
+
+		/**
+		 * Finds the glyph with the lowest score, searching outwards from the
+		 * block brightness.
+		 *
+		 * @param blockBits       The block bitmap
+		 * @param blockBrightness The block brightness
+		 * @return The best matching character
+		 */
+		char match(long blockBits, double blockBrightness) {
+			int above = Arrays.binarySearch(brightness, blockBrightness);
+			if (above < 0) {
+				above = -above - 1;
+			}
+			int below = above - 1;
+			double bestScore = Double.POSITIVE_INFINITY;
+			char best = 0;
+			while (below >= 0 || above < chars.length) {
+				double belowDistance = below >= 0 ?
+						blockBrightness - brightness[below] : Double.POSITIVE_INFINITY;
+				double aboveDistance = above < chars.length ?
+						brightness[above] - blockBrightness : Double.POSITIVE_INFINITY;
+				boolean takeBelow = belowDistance <= aboveDistance;
+				double distance = takeBelow ? belowDistance : aboveDistance;
+				if (distance > bestScore) {
+					break;
+				}
+				int i = takeBelow ? below-- : above++;
+				double score = Long.bitCount(blockBits ^ bits[i]) * CELL_WEIGHT + distance;
+				if (score < bestScore || (score == bestScore && chars[i] < best)) {
+					bestScore = score;
+					best = chars[i];
+				}
+			}
+			return best;
+		}
+	}
+}
@@ -2,6 +2,8 @@ package image_char_matching;
 
 import exceptions.EmptyCharsetException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 /**
  * A class that matches image brightness values to ASCII characters based on
@@ -9,37 +11,66 @@ import java.util.*;
  * This class maintains a mapping between normalized brightness values and
  * characters,
  * allowing for efficient character selection based on image brightness.
+ * The map is compiled, together with the rounding mode, into a dense lookup
+ * table over quantized brightness, so matching a block is usually a single
+ * array read. Buckets in which the answer changes are resolved exactly, so
+ * the result is always the one the map gives.
+ * The map is keyed by raw brightness and normalized only when compiled, so
+ * adding and removing characters are cheap deltas and normalization stays
+ * correct when the darkest or brightest character changes. Only the buckets
+ * next to a changed character are recompiled, unless the extremes changed.
  *
  */
 public class SubImgCharMatcher {
 	/** Cache for storing raw brightness values of characters */
-	private static final Map<Character, Double> rawCharBrightnessCache = new HashMap<>();
-
-	/**
-	 * Cache for storing normalized brightness values, keyed by charset
-	 */
-	private static final Map<String, double[]> normalizedBrightnessGlobalCache = new HashMap<>();
+	private static final Map<Character, Double> rawCharBrightnessCache = new ConcurrentHashMap<>();
 
 	/** The current rounding mode for brightness calculations */
 	private static String roundingMode = "abs";
 
-	/** The set of characters available for matching */
-	private final char[] charset;
+	/** Smallest number of uncached glyphs worth rendering in parallel */
+	private static final int MIN_PARALLEL_GLYPHS = 64;
+
+	/** Number of quantized brightness buckets in the lookup table */
+	private static final int LOOKUP_SIZE = 4096;
+
+	/** Lookup table entry of a bucket whose answer is not constant */
+	private static final int UNRESOLVED = -1;
+
+	/** Compiled rounding modes */
+	private static final int MODE_ABS = 0;
+	private static final int MODE_UP = 1;
+	private static final int MODE_DOWN = 2;
+
+	/** The set of characters available for matching, sorted */
+	private final TreeSet<Character> charset = new TreeSet<>();
 
-	/** List representation of the charset for easier manipulation */
-	private final List<Character> charList;
+	/** Mapping of raw brightness values to characters with that brightness */
+	private final TreeMap<Double, PriorityQueue<Character>> brightnessToCharsMap = new TreeMap<>();
 
-	/** Key for the current charset's normalized brightness cache */
-	private String normCacheKey = null;
+	/** The last compiled lookup, possibly stale */
+	private volatile Lookup lookup = null;
 
-	/** Minimum brightness value in the current charset */
-	private double min = Double.MAX_VALUE;
+	/** Whether the charset changed since lookup was compiled */
+	private volatile boolean stale = true;
 
-	/** Maximum brightness value in the current charset */
-	private double max = Double.MIN_VALUE;
+	/** Whether the next compilation must rebuild every bucket */
+	private boolean fullRebuild = true;
 
-	/** Mapping of brightness values to characters with that brightness */
-	private TreeMap<Double, PriorityQueue<Character>> brightnessToCharsMap;
+	/** Lowest raw brightness whose buckets changed since the last compilation */
+	private double dirtyLow = Double.POSITIVE_INFINITY;
+
+	/** Highest raw brightness whose buckets changed since the last compilation */
+	private double dirtyHigh = Double.NEGATIVE_INFINITY;
+
+	/** The sorted charset as a string, or null if it changed since last built */
+	private String charsetKey = null;
+
+	/** Incremented on every change of the charset */
+	private volatile int version = 0;
+
+	/** The rounding mode of this matcher, or null to follow the shared one */
+	private final String fixedRoundingMode;
 
 	/**
 	 * Constructs a new SubImgCharMatcher with the specified charset.
@@ -47,17 +78,59 @@ public class SubImgCharMatcher {
 	 * @param charset The set of characters to use for matching
 	 */
 	public SubImgCharMatcher(char[] charset) {
-		this.charset = charset;
-		this.charList = new ArrayList<>();
+		this(charset, null);
+	}
+
+	/**
+	 * Constructs a new SubImgCharMatcher with the specified charset and a
+	 * rounding mode of its own, which {@link #setRoundingMode} does not
+	 * change. Front ends serving several clients at once use this so that
+	 * every client's mode is kept apart.
+	 *
+	 * @param charset      The set of characters to use for matching
+	 * @param roundingMode The rounding mode ("abs", "up", or "down"), or null
+	 *                     to follow the shared mode
+	 * @throws IllegalArgumentException if the rounding mode is not one of these
+	 */
+	public SubImgCharMatcher(char[] charset, String roundingMode) {
+		this.fixedRoundingMode = roundingMode == null ? null : canonicalMode(roundingMode);
+		precomputeBrightness(charset);
 		for (char ch : charset) {
-			charList.add(ch);
+			if (this.charset.add(ch)) {
+				brightnessToCharsMap.computeIfAbsent(getRawBrightness(ch), k -> new PriorityQueue<>())
+						.add(ch);
+			}
+		}
+	}
+
+	/**
+	 * Computes the raw brightness of every given character that is not cached
+	 * yet, rendering the glyphs in parallel on the common fork/join pool when
+	 * there are many of them, such as a whole Unicode block. Later additions
+	 * of these characters then only read the cache.
+	 *
+	 * @param chars The characters to compute the brightness of
+	 */
+	public static void precomputeBrightness(char[] chars) {
+		char[] missing = new char[chars.length];
+		int count = 0;
+		for (char c : chars) {
+			if (!rawCharBrightnessCache.containsKey(c)) {
+				missing[count++] = c;
+			}
 		}
-		this.brightnessToCharsMap = new TreeMap<>();
-		buildBrightnessMap();
+		if (count < MIN_PARALLEL_GLYPHS) {
+			for (int i = 0; i < count; i++) {
+				getRawBrightness(missing[i]);
+			}
+			return;
+		}
+		IntStream.range(0, count).parallel().forEach(i -> getRawBrightness(missing[i]));
 	}
 
 	/**
-	 * Sets the rounding mode for brightness calculations.
+	 * Sets the rounding mode for brightness calculations, shared by every
+	 * matcher without a mode of its own.
 	 * The mode determines how brightness values are rounded when selecting
 	 * characters.
 	 *
@@ -65,10 +138,29 @@ public class SubImgCharMatcher {
 	 */
 	public static void setRoundingMode(String mode) {
 		if (mode.equals("abs") || mode.equals("up") || mode.equals("down")) {
-			roundingMode = mode;
+			roundingMode = canonicalMode(mode);
 		}
 	}
 
+	/**
+	 * Returns the shared rounding mode for brightness calculations.
+	 *
+	 * @return The rounding mode ("abs", "up", or "down")
+	 */
+	public static String getRoundingMode() {
+		return roundingMode;
+	}
+
+	/**
+	 * Returns the rounding mode this matcher matches with: its own, if it was
+	 * constructed with one, or else the shared mode.
+	 *
+	 * @return The rounding mode ("abs", "up", or "down")
+	 */
+	public String getActiveRoundingMode() {
+		return fixedRoundingMode != null ? fixedRoundingMode : roundingMode;
+	}
+
 	/**
 	 * Returns the character with the lowest ASCII value that best matches the given
 	 * brightness.
@@ -80,161 +172,381 @@ public class SubImgCharMatcher {
 	 * @throws EmptyCharsetException if no characters are available for matching
 	 */
 	public char getCharByImageBrightness(double brightness) {
-		Map.Entry<Double, PriorityQueue<Character>> floor = brightnessToCharsMap.floorEntry(brightness);
-		Map.Entry<Double, PriorityQueue<Character>> ceil = brightnessToCharsMap.ceilingEntry(brightness);
-
-		if (floor == null && ceil == null) {
-			throw new EmptyCharsetException();
-		} else if (floor == null) {
-			return ceil.getValue().peek();
-		} else if (ceil == null) {
-			return floor.getValue().peek();
-		} else {
-			switch (roundingMode) {
-				case "up":
-					return ceil.getValue().peek();
-				case "down":
-					return floor.getValue().peek();
-				default: // "abs"
-					double floorDiff = Math.abs(brightness - floor.getKey());
-					double ceilDiff = Math.abs(brightness - ceil.getKey());
-					if (floorDiff < ceilDiff) {
-						return floor.getValue().peek();
-					} else if (ceilDiff < floorDiff) {
-						return ceil.getValue().peek();
-					} else {
-						char floorChar = floor.getValue().peek();
-						char ceilChar = ceil.getValue().peek();
-						return (floorChar < ceilChar) ? floorChar : ceilChar;
-					}
+		Lookup current = getLookup();
+		if (brightness >= 0 && brightness < 1) {
+			int entry = current.table[(int) (brightness * LOOKUP_SIZE)];
+			if (entry != UNRESOLVED) {
+				return (char) entry;
 			}
 		}
+		return current.chars[current.resolve(brightness)];
 	}
 
 	/**
 	 * Adds a character to the charset and updates the brightness mapping.
 	 * Uses cached brightness values if available from previous processing.
+	 * Adding a character that is already in the charset does nothing.
 	 *
 	 * @param c The character to add
 	 */
-	public void addChar(char c) {
-		charList.add(c);
-		double brightness = getNormalizedBrightness(c, min, max);
+	public synchronized void addChar(char c) {
+		if (!charset.add(c)) {
+			return;
+		}
+		double brightness = getRawBrightness(c);
+		markChanged(brightness, !brightnessToCharsMap.isEmpty() &&
+				brightness > brightnessToCharsMap.firstKey() &&
+				brightness < brightnessToCharsMap.lastKey());
 		brightnessToCharsMap.computeIfAbsent(brightness, k -> new PriorityQueue<>()).add(c);
 	}
 
 	/**
 	 * Removes a character from the charset and updates the brightness mapping.
+	 * Removing a character that is not in the charset does nothing.
 	 *
 	 * @param c The character to remove
 	 */
-	public void removeChar(char c) {
-		charList.remove(Character.valueOf(c));
-		double brightness = getNormalizedBrightness(c, min, max);
+	public synchronized void removeChar(char c) {
+		if (!charset.remove(c)) {
+			return;
+		}
+		double brightness = getRawBrightness(c);
 		PriorityQueue<Character> queue = brightnessToCharsMap.get(brightness);
-		if (queue != null) {
-			queue.remove(c);
-			if (queue.isEmpty()) {
-				brightnessToCharsMap.remove(brightness);
-			}
+		queue.remove(c);
+		boolean extreme = brightness == brightnessToCharsMap.firstKey() ||
+				brightness == brightnessToCharsMap.lastKey();
+		markChanged(brightness, !(extreme && queue.isEmpty()));
+		if (queue.isEmpty()) {
+			brightnessToCharsMap.remove(brightness);
 		}
 	}
 
 	/**
-	 * Builds a unique cache key for the current charset.
+	 * Returns the number of characters in the charset.
 	 *
-	 * @return A string key for the sorted charset
+	 * @return The charset size
 	 */
-	private String buildNormCacheKey() {
-		char[] sortedCharset = charset.clone();
-		Arrays.sort(sortedCharset);
-		return new String(sortedCharset);
+	public synchronized int size() {
+		return charset.size();
 	}
 
 	/**
-	 * Calculates the raw brightness of a character.
-	 * Uses cached values if available from previous processing.
+	 * Returns the charset as a string of its characters in ascending order,
+	 * suitable as a cache key.
 	 *
-	 * @param c The character to calculate brightness for
-	 * @return The raw brightness value of the character
+	 * @return The sorted charset
 	 */
-	private double getRawBrightness(char c) {
-		if (rawCharBrightnessCache.containsKey(c)) {
-			return rawCharBrightnessCache.get(c);
-		} else {
-			int whiteCounter = 0;
-			boolean[][] booleanArray = CharConverter.convertToBoolArray(c);
-			for (int i = 0; i < booleanArray.length; i++) {
-				for (int j = 0; j < booleanArray[i].length; j++) {
-					if (booleanArray[i][j]) {
-						whiteCounter++;
-					}
-				}
+	public synchronized String getCharsetKey() {
+		if (charsetKey == null) {
+			StringBuilder builder = new StringBuilder(charset.size());
+			for (char c : charset) {
+				builder.append(c);
 			}
-			int arraySize = booleanArray.length * booleanArray[0].length;
-			double brightness = (double) whiteCounter / arraySize;
-			rawCharBrightnessCache.put(c, brightness);
-			return brightness;
+			charsetKey = builder.toString();
 		}
+		return charsetKey;
 	}
 
 	/**
-	 * Builds the mapping between brightness values and characters.
-	 * Creates a TreeMap where each brightness value maps to a priority queue of
-	 * characters.
+	 * Returns a number that changes whenever the charset does, so that other
+	 * engines over this charset can tell when to recompile.
+	 *
+	 * @return The charset version
+	 */
+	int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Records a change of the character at the given raw brightness. Must be
+	 * called before the map is updated, while the neighbours of the change are
+	 * still in it.
+	 *
+	 * @param brightness The raw brightness of the added or removed character
+	 * @param inside     Whether the darkest and brightest brightness values
+	 *                   stay the same, so normalization is unchanged
 	 */
-	private void buildBrightnessMap() {
-		brightnessToCharsMap.clear();
-		double[] normalized = getNormalizedBrightnessForCharset();
-		for (int i = 0; i < charList.size(); i++) {
-			double brightness = normalized[i];
-			brightnessToCharsMap.computeIfAbsent(brightness, k -> new PriorityQueue<>()).add(charList.get(i));
+	private void markChanged(double brightness, boolean inside) {
+		stale = true;
+		charsetKey = null;
+		version++;
+		if (!inside) {
+			fullRebuild = true;
+			return;
 		}
+		// Only brightness between the neighbouring keys can change its answer
+		Double lower = brightnessToCharsMap.lowerKey(brightness);
+		Double higher = brightnessToCharsMap.higherKey(brightness);
+		dirtyLow = Math.min(dirtyLow, lower == null ? brightness : lower);
+		dirtyHigh = Math.max(dirtyHigh, higher == null ? brightness : higher);
 	}
 
 	/**
-	 * Calculates normalized brightness values for all characters in the charset.
-	 * Uses cached values if available for the current image and charset.
+	 * Returns the lookup for the current charset and rounding mode, compiling
+	 * it first if it is stale.
 	 *
-	 * @return An array of normalized brightness values corresponding to the charset
+	 * @return The current lookup
+	 * @throws EmptyCharsetException if no characters are available for matching
+	 */
+	Lookup getLookup() {
+		Lookup current = lookup;
+		if (stale || current.mode != getActiveRoundingMode()) {
+			current = compileLookup();
+		}
+		return current;
+	}
+
+	/**
+	 * Compiles the brightness map and the active rounding mode into a lookup
+	 * table, unless another thread has just done so. When only characters
+	 * strictly between the extremes changed, the previous table is reused
+	 * outside the changed range.
+	 *
+	 * @return The lookup for the current charset and rounding mode
+	 * @throws EmptyCharsetException if no characters are available for matching
 	 */
-	private double[] getNormalizedBrightnessForCharset() {
-		normCacheKey = buildNormCacheKey();
-		if (normalizedBrightnessGlobalCache.containsKey(normCacheKey)) {
-			return normalizedBrightnessGlobalCache.get(normCacheKey);
+	private synchronized Lookup compileLookup() {
+		String mode = getActiveRoundingMode();
+		Lookup current = lookup;
+		if (!stale && current.mode == mode) {
+			return current;
+		}
+		if (brightnessToCharsMap.isEmpty()) {
+			throw new EmptyCharsetException();
 		}
-		int n = charList.size();
-		min = Double.MAX_VALUE;
-		max = Double.MIN_VALUE;
-		for (int i = 0; i < n; i++) {
-			double b = getRawBrightness(charList.get(i));
-			if (b < min)
-				min = b;
-			if (b > max)
-				max = b;
+		Lookup previous = (fullRebuild || current == null || current.mode != mode) ? null : current;
+		current = new Lookup(brightnessToCharsMap, mode, previous, dirtyLow, dirtyHigh);
+		lookup = current;
+		fullRebuild = false;
+		dirtyLow = Double.POSITIVE_INFINITY;
+		dirtyHigh = Double.NEGATIVE_INFINITY;
+		stale = false;
+		return current;
+	}
+
+	/**
+	 * Returns the constant spelling of a rounding mode, so that modes can be
+	 * compared by identity.
+	 *
+	 * @param mode The rounding mode
+	 * @return "abs", "up" or "down"
+	 * @throws IllegalArgumentException if the mode is not one of these
+	 */
+	private static String canonicalMode(String mode) {
+		switch (mode) {
+			case "abs":
+				return "abs";
+			case "up":
+				return "up";
+			case "down":
+				return "down";
+			default:
+				throw new IllegalArgumentException("Invalid rounding mode: " + mode);
 		}
-		double[] normalized = new double[n];
-		for (int i = 0; i < n; i++) {
-			normalized[i] = getNormalizedBrightness(charList.get(i), min, max);
+	}
+
+	/**
+	 * Calculates the raw brightness of a character.
+	 * Uses cached values if available from previous processing, in memory or
+	 * in the persistent glyph cache of {@link CharConverter}.
+	 *
+	 * @param c The character to calculate brightness for
+	 * @return The raw brightness value of the character
+	 */
+	private static double getRawBrightness(char c) {
+		Double cached = rawCharBrightnessCache.get(c);
+		if (cached != null) {
+			return cached;
 		}
-		normalizedBrightnessGlobalCache.put(normCacheKey, normalized);
-		return normalized;
+		int pixelCount = CharConverter.DEFAULT_PIXEL_RESOLUTION * CharConverter.DEFAULT_PIXEL_RESOLUTION;
+		double brightness = (double) CharConverter.countWhitePixels(c) / pixelCount;
+		rawCharBrightnessCache.put(c, brightness);
+		return brightness;
 	}
 
 	/**
-	 * Calculates the normalized brightness for a single character.
-	 * Used when adding a single character to the charset.
+	 * Normalizes a raw brightness into [0, 1] relative to the charset extremes.
 	 *
-	 * @param c   The character to normalize
-	 * @param min The minimum brightness value in the charset
-	 * @param max The maximum brightness value in the charset
+	 * @param brightness The raw brightness value
+	 * @param min        The minimum raw brightness in the charset
+	 * @param max        The maximum raw brightness in the charset
 	 * @return The normalized brightness value
 	 */
-	private double getNormalizedBrightness(char c, double min, double max) {
-		double cBrightness = getRawBrightness(c);
+	private static double normalize(double brightness, double min, double max) {
 		if (max == min) {
 			return 0.0;
 		}
-		return (cBrightness - min) / (max - min);
+		return (brightness - min) / (max - min);
+	}
+
+	/**
+	 * An immutable compilation of the brightness map for one rounding mode.
+	 * The sorted normalized brightness values and the character each one maps
+	 * to are kept in arrays. The table holds, for each quantized bucket, the
+	 * character every brightness in that bucket maps to, or UNRESOLVED if the
+	 * answer changes inside the bucket.
+	 */
+	static final class Lookup {
+		private final String mode;
+		private final int compiledMode;
+		private final double[] keys;
+		private final char[] chars;
+		private final int[] table;
+
+		/** Like table but holding indices, built on first use by {@link #indexOf} */
+		private volatile int[] indexTable = null;
+
+		/**
+		 * Compiles a lookup.
+		 *
+		 * @param map       The raw brightness map, not empty
+		 * @param mode      The rounding mode to compile
+		 * @param previous  A lookup for the same mode and extremes whose table
+		 *                  is still valid outside the dirty range, or null to
+		 *                  build every bucket
+		 * @param dirtyLow  The lowest raw brightness whose buckets changed
+		 * @param dirtyHigh The highest raw brightness whose buckets changed
+		 */
+		Lookup(TreeMap<Double, PriorityQueue<Character>> map, String mode, Lookup previous,
+				double dirtyLow, double dirtyHigh) {
+			this.mode = mode;
+			this.compiledMode = mode.equals("up") ? MODE_UP :
+					mode.equals("down") ? MODE_DOWN : MODE_ABS;
+			double min = map.firstKey();
+			double max = map.lastKey();
+			double[] sortedKeys = new double[map.size()];
+			char[] sortedChars = new char[map.size()];
+			int n = 0;
+			for (Map.Entry<Double, PriorityQueue<Character>> entry : map.entrySet()) {
+				double key = normalize(entry.getKey(), min, max);
+				char c = entry.getValue().peek();
+				if (n > 0 && sortedKeys[n - 1] == key) {
+					// Distinct raw values that normalize alike share one key
+					sortedChars[n - 1] = (char) Math.min(sortedChars[n - 1], c);
+					continue;
+				}
+				sortedKeys[n] = key;
+				sortedChars[n] = c;
+				n++;
+			}
+			this.keys = Arrays.copyOf(sortedKeys, n);
+			this.chars = Arrays.copyOf(sortedChars, n);
+
+			int firstBucket = 0;
+			int lastBucket = LOOKUP_SIZE - 1;
+			if (previous != null) {
+				this.table = previous.table.clone();
+				firstBucket = bucketOf(normalize(dirtyLow, min, max));
+				lastBucket = bucketOf(normalize(dirtyHigh, min, max));
+			} else {
+				this.table = new int[LOOKUP_SIZE];
+			}
+			// The chosen index never decreases as brightness grows, so a bucket
+			// whose first and last values agree maps to that index throughout.
+			for (int bucket = firstBucket; bucket <= lastBucket; bucket++) {
+				double first = (double) bucket / LOOKUP_SIZE;
+				double last = Math.nextDown((double) (bucket + 1) / LOOKUP_SIZE);
+				int firstIndex = resolve(first);
+				table[bucket] = firstIndex == resolve(last) ? chars[firstIndex] : UNRESOLVED;
+			}
+		}
+
+		/**
+		 * Finds the index of the brightness value the given brightness maps
+		 * to, as {@link #resolve} does, with a table read for most values.
+		 * The table is not carried over to the next compilation, since
+		 * indices move when characters are added or removed, so it is only
+		 * worth building for callers that match many blocks at once.
+		 *
+		 * @param brightness The brightness value to match
+		 * @return An index into keys and chars
+		 */
+		int indexOf(double brightness) {
+			int[] indices = indexTable;
+			if (indices == null) {
+				indices = new int[LOOKUP_SIZE];
+				for (int bucket = 0; bucket < LOOKUP_SIZE; bucket++) {
+					int first = resolve((double) bucket / LOOKUP_SIZE);
+					int last = resolve(Math.nextDown((double) (bucket + 1) / LOOKUP_SIZE));
+					indices[bucket] = first == last ? first : UNRESOLVED;
+				}
+				indexTable = indices;
+			}
+			if (brightness >= 0 && brightness < 1) {
+				int index = indices[(int) (brightness * LOOKUP_SIZE)];
+				if (index != UNRESOLVED) {
+					return index;
+				}
+			}
+			return resolve(brightness);
+		}
+
+		/**
+		 * Returns the character at an index returned by {@link #resolve}.
+		 *
+		 * @param index The index
+		 * @return The character
+		 */
+		char charAt(int index) {
+			return chars[index];
+		}
+
+		/**
+		 * Returns the normalized brightness of the character at an index
+		 * returned by {@link #resolve}, the value it stands for.
+		 *
+		 * @param index The index
+		 * @return The normalized brightness, between 0 and 1
+		 */
+		double brightnessAt(int index) {
+			return keys[index];
+		}
+
+		/**
+		 * Returns the bucket a normalized brightness falls in, clamped to the
+		 * table.
+		 *
+		 * @param brightness The normalized brightness
+		 * @return A bucket index
+		 */
+		private static int bucketOf(double brightness) {
+			return Math.max(0, Math.min(LOOKUP_SIZE - 1, (int) (brightness * LOOKUP_SIZE)));
+		}
+
+		/**
+		 * Finds the index of the brightness value the given brightness maps to,
+		 * with the same floor, ceiling and tie rules as the original map walk.
+		 *
+		 * @param brightness The brightness value to match
+		 * @return An index into keys and chars
+		 */
+		int resolve(double brightness) {
+			int found = Arrays.binarySearch(keys, brightness);
+			if (found >= 0) {
+				return found;
+			}
+			int ceil = -found - 1;
+			if (ceil == 0) {
+				return 0;
+			} else if (ceil == keys.length) {
+				return keys.length - 1;
+			}
+			int floor = ceil - 1;
+			switch (compiledMode) {
+				case MODE_UP:
+					return ceil;
+				case MODE_DOWN:
+					return floor;
+				default:
+					double floorDiff = Math.abs(brightness - keys[floor]);
+					double ceilDiff = Math.abs(brightness - keys[ceil]);
+					if (floorDiff < ceilDiff) {
+						return floor;
+					} else if (ceilDiff < floorDiff) {
+						return ceil;
+					}
+					return chars[floor] < chars[ceil] ? floor : ceil;
+			}
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package ascii_art;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs a {@link ConversionServer} on a free loopback port with one
+ * conversion slot and checks its responses and counters over HTTP.
+ */
+class ConversionServerTest {
+	private static final int MAX_UPLOAD = 64 * 1024;
+	private static final int WIDTH = 64;
+	private static final int HEIGHT = 48;
+	private static final long SLOT_TIMEOUT_MILLIS = 5000;
+
+	private final HttpClient client = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.build();
+	private ConversionServer server;
+	private int previousParallelism;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		previousParallelism = AsciiArtAlgorithm.getParallelism();
+		server = new ConversionServer(1, 0, MAX_UPLOAD);
+		server.start(0);
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+		assertEquals(previousParallelism, AsciiArtAlgorithm.getParallelism(),
+				"stop() must restore the conversion parallelism");
+	}
+
+	@Test
+	void convertsAnUploadedImage() throws Exception {
+		HttpResponse<String> response = post("/convert?res=16&charset=0-9&round=up", gradientPng());
+		assertEquals(200, response.statusCode());
+		String[] rows = response.body().split("\n");
+		// A fitted grid keeps the aspect ratio: 16 columns of 4 x 4 blocks
+		assertEquals(HEIGHT / (WIDTH / 16), rows.length);
+		for (String row : rows) {
+			assertEquals(16, row.length());
+			assertTrue(row.chars().allMatch(c -> c >= '0' && c <= '9'), row);
+		}
+		assertTrue(metrics().contains("served 1\n"), metrics());
+	}
+
+	@Test
+	void refusesAnUploadOverTheLimit() throws Exception {
+		HttpResponse<String> response = post("/convert", new byte[MAX_UPLOAD + 1]);
+		assertEquals(413, response.statusCode());
+		assertTrue(metrics().contains("failed 1\n"), metrics());
+	}
+
+	@Test
+	void refusesARequestWhileTheSlotIsTaken() throws Exception {
+		InetSocketAddress address = server.getAddress();
+		// A request whose body never arrives holds the only slot
+		try (Socket stalled = new Socket(address.getAddress(), address.getPort())) {
+			OutputStream out = stalled.getOutputStream();
+			out.write(("POST /convert HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1000\r\n\r\n")
+					.getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			awaitMetric("in_flight 1\n");
+
+			HttpResponse<String> response = post("/convert", gradientPng());
+			assertEquals(503, response.statusCode());
+			assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+			String metrics = metrics();
+			assertTrue(metrics.contains("rejected 1\n"), metrics);
+			assertTrue(metrics.contains("available_slots 0\n"), metrics);
+		}
+		awaitMetric("available_slots 1\n");
+	}
+
+	@Test
+	void reportsMetrics() throws Exception {
+		post("/convert?res=8", gradientPng());
+		post("/convert?res=8", gradientPng());
+		post("/convert?round=sideways", gradientPng());
+		String metrics = metrics();
+		assertTrue(metrics.contains("concurrency 1\n"), metrics);
+		assertTrue(metrics.contains("served 2\n"), metrics);
+		assertTrue(metrics.contains("failed 1\n"), metrics);
+		assertTrue(metrics.contains("wait_count 2 "), metrics);
+		assertTrue(metrics.contains("service_count 2 "), metrics);
+		// The second upload is the same image, so its result comes from the cache
+		assertTrue(metrics.matches("(?s).*cache entries=\\d+ .* hits=[1-9].*"), metrics);
+	}
+
+	/*
+	 * Posts a body to the server and returns the response as text.
+	 */
+	private HttpResponse<String> post(String path, byte[] body) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(uri(path))
+				.POST(HttpRequest.BodyPublishers.ofByteArray(body))
+				.build();
+		return client.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	/*
+	 * Returns the server's /metrics page.
+	 */
+	private String metrics() throws Exception {
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/metrics")).build(),
+				HttpResponse.BodyHandlers.ofString());
+		assertEquals(200, response.statusCode());
+		return response.body();
+	}
+
+	/*
+	 * Polls /metrics until it contains the given line.
+	 */
+	private void awaitMetric(String line) throws Exception {
+		long deadline = System.currentTimeMillis() + SLOT_TIMEOUT_MILLIS;
+		while (!metrics().contains(line)) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Timed out waiting for " + line.trim() + " in:\n" + metrics());
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private URI uri(String path) {
+		InetSocketAddress address = server.getAddress();
+		return URI.create("http://" + address.getHostString() + ":" + address.getPort() + path);
+	}
+
+	/*
+	 * Encodes a horizontal grey gradient as a PNG.
+	 */
+	private static byte[] gradientPng() throws IOException {
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				image.setRGB(x, y, x * 255 / (WIDTH - 1) * 0x010101);
+			}
+		}
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", png);
+		return png.toByteArray();
+	}
+}
@@ -0,0 +1,103 @@
+package ascii_art;
+
+import image.Frame;
+import image.Image;
+import image_char_matching.SubImgCharMatcher;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that {@link FrameConverter}, which reuses the blocks a frame shares
+ * with the previous one, gives every frame the same characters as a full
+ * {@link AsciiArtAlgorithm} run on it as a still image.
+ */
+class FrameConverterTest {
+	private static final char[] CHARSET = " .:-=+*#%@".toCharArray();
+
+	@Test
+	void matchesStillConversionOfEveryFrame() {
+		int[][] sizes = {{1, 9}, {9, 1}, {37, 23}, {16, 16}};
+		for (int i = 0; i < sizes.length; i++) {
+			int width = sizes[i][0];
+			int height = sizes[i][1];
+			int side = Integer.highestOneBit(Math.max(width, height) * 2 - 1);
+			for (int charsInRow = 1; charsInRow <= side; charsInRow *= 2) {
+				assertSequence(width, height, charsInRow, i);
+			}
+		}
+	}
+
+	@Test
+	void reusesEveryBlockOfAnUnchangedFrame() {
+		SubImgCharMatcher matcher = new SubImgCharMatcher(CHARSET, "abs");
+		FrameConverter converter = new FrameConverter(8, matcher);
+		int[] pixels = randomPixels(37, 23, new Random(0));
+		char[][] first = converter.convert(new Frame(pixels.clone(), 37, 23, 0, null));
+		assertEquals(64, converter.getBlocksMatched());
+		assertArrayEquals(first, converter.convert(new Frame(pixels.clone(), 37, 23, 0, null)));
+		assertEquals(64, converter.getBlocksMatched());
+		assertEquals(64, converter.getBlocksReused());
+	}
+
+	/*
+	 * Converts a sequence of frames of one size, then one of another size,
+	 * changing a rectangle each time with or without reporting it, and
+	 * compares every frame with a still conversion.
+	 */
+	private static void assertSequence(int width, int height, int charsInRow, long seed) {
+		Random random = new Random(seed);
+		SubImgCharMatcher matcher = new SubImgCharMatcher(CHARSET, "abs");
+		FrameConverter converter = new FrameConverter(charsInRow, matcher);
+		int[] pixels = randomPixels(width, height, random);
+		for (int frame = 0; frame < 6; frame++) {
+			Rectangle changed = null;
+			if (frame > 0) {
+				pixels = pixels.clone();
+				int left = random.nextInt(width);
+				int top = random.nextInt(height);
+				changed = new Rectangle(left, top, 1 + random.nextInt(width - left),
+						1 + random.nextInt(height - top));
+				for (int y = changed.y; y < changed.y + changed.height; y++) {
+					for (int x = changed.x; x < changed.x + changed.width; x++) {
+						pixels[y * width + x] = 0xFF000000 | random.nextInt(0x1000000);
+					}
+				}
+			}
+			// Every other frame leaves the converter to find the change itself
+			Rectangle reported = frame % 2 == 0 ? null : changed;
+			assertArrayEquals(still(pixels, width, height, charsInRow, matcher),
+					converter.convert(new Frame(pixels, width, height, 0, reported)),
+					width + "x" + height + " at " + charsInRow + " frame " + frame);
+		}
+		// A frame of another size, here the transposed one, starts over
+		int[] resized = randomPixels(height, width, random);
+		assertArrayEquals(still(resized, height, width, charsInRow, matcher),
+				converter.convert(new Frame(resized, height, width, 0, null)),
+				height + "x" + width + " at " + charsInRow + " after resizing");
+	}
+
+	/*
+	 * Converts a frame's pixels as a still image.
+	 */
+	private static char[][] still(int[] pixels, int width, int height, int charsInRow,
+			SubImgCharMatcher matcher) {
+		Image image = new Image(pixels.clone(), width, height);
+		return new AsciiArtAlgorithm(image, charsInRow, matcher, charsInRow).run();
+	}
+
+	/*
+	 * Returns opaque random pixels.
+	 */
+	private static int[] randomPixels(int width, int height, Random random) {
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+		}
+		return pixels;
+	}
+}
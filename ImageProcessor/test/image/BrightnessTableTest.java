@@ -0,0 +1,150 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the summed-area lookups of {@link BrightnessTable} against the
+ * original per-pixel block brightness, on small images of odd sizes.
+ */
+class BrightnessTableTest {
+	/** Widths and heights of the test images, paired by index */
+	private static final int[] WIDTHS = {1, 1, 37, 13, 7, 31, 64};
+	private static final int[] HEIGHTS = {1, 37, 1, 7, 13, 17, 48};
+
+	/** Difference allowed between the fixed-point and floating-point sums */
+	private static final double TOLERANCE = 1e-12;
+
+	@Test
+	void paddedGridMatchesPerPixelBrightness() {
+		for (int i = 0; i < WIDTHS.length; i++) {
+			Image image = randomImage(WIDTHS[i], HEIGHTS[i], i);
+			Image padded = image.padToPowerOfTwo();
+			BrightnessTable table = new BrightnessTable(image);
+			int side = Math.max(padded.getWidth(), padded.getHeight());
+			for (int blocksPerRow = 1; blocksPerRow <= side; blocksPerRow++) {
+				BlockGrid grid = BlockGrid.padded(image.getWidth(), image.getHeight(), blocksPerRow);
+				Image[][] blocks = BlockSplitter.splitIntoBlocks(image, grid);
+				int size = grid.getBlockWidth(0);
+				for (int by = 0; by < blocksPerRow; by++) {
+					for (int bx = 0; bx < blocksPerRow; bx++) {
+						String where = image.getWidth() + "x" + image.getHeight() + " grid " +
+								blocksPerRow + " block " + by + "," + bx;
+						double actual = table.blockBrightness(grid.getTop(by), grid.getLeft(bx),
+								size, size);
+						assertEquals(perPixelBrightness(padded, by * size, bx * size, size, size),
+								actual, TOLERANCE, where);
+						assertEquals(BlockSplitter.computeBlockBrightness(blocks[by][bx]), actual,
+								where);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void fittedGridMatchesPerPixelBrightness() {
+		for (int i = 0; i < WIDTHS.length; i++) {
+			Image image = randomImage(WIDTHS[i], HEIGHTS[i], i);
+			BrightnessTable table = new BrightnessTable(image);
+			for (int columns = 1; columns <= image.getWidth(); columns++) {
+				BlockGrid grid = BlockGrid.fitted(image.getWidth(), image.getHeight(), columns);
+				for (int by = 0; by < grid.getRows(); by++) {
+					for (int bx = 0; bx < columns; bx++) {
+						int top = grid.getTop(by);
+						int left = grid.getLeft(bx);
+						int height = grid.getBlockHeight(by);
+						int width = grid.getBlockWidth(bx);
+						assertEquals(perPixelBrightness(image, top, left, height, width),
+								table.blockBrightness(top, left, height, width), TOLERANCE,
+								grid + " block " + by + "," + bx);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void paddingOnlyBlocksAreWhite() {
+		// A 1-pixel-wide column centered in a 64 x 64 padded square
+		Image image = randomImage(1, 37, 0);
+		BrightnessTable table = new BrightnessTable(image);
+		BlockGrid grid = BlockGrid.padded(1, 37, 64);
+		for (int by = 0; by < 64; by++) {
+			for (int bx = 0; bx < 64; bx++) {
+				int top = grid.getTop(by);
+				int left = grid.getLeft(bx);
+				if (top >= 0 && top < 37 && left == 0) {
+					continue;
+				}
+				assertEquals(1.0, table.blockBrightness(top, left, 1, 1), "block " + by + "," + bx);
+			}
+		}
+		assertEquals(1.0, table.blockBrightness(-5, -5, 3, 3));
+		assertEquals(1.0, table.blockBrightness(37, 1, 8, 8));
+	}
+
+	@Test
+	void cellsMatchPerPixelBrightness() {
+		double[] cells = new double[4 * 2];
+		for (int i = 0; i < WIDTHS.length; i++) {
+			Image image = randomImage(WIDTHS[i], HEIGHTS[i], i);
+			BrightnessTable table = new BrightnessTable(image);
+			// Blocks reaching into the padding on every side, as short as one row
+			for (int top = -3; top < image.getHeight(); top += 2) {
+				for (int left = -3; left < image.getWidth(); left += 3) {
+					for (int height = 1; height <= 9; height += 4) {
+						int width = 5;
+						int rows = Math.min(4, height);
+						int columns = 2;
+						table.cellBrightness(top, left, height, width, rows, columns, cells);
+						for (int cy = 0; cy < rows; cy++) {
+							int cellTop = top + cy * height / rows;
+							int cellHeight = top + (cy + 1) * height / rows - cellTop;
+							for (int cx = 0; cx < columns; cx++) {
+								int cellLeft = left + cx * width / columns;
+								int cellWidth = left + (cx + 1) * width / columns - cellLeft;
+								assertEquals(perPixelBrightness(image, cellTop, cellLeft, cellHeight,
+										cellWidth), cells[cy * columns + cx], TOLERANCE,
+										"cell " + cy + "," + cx + " of block at " + top + "," + left);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * The original block brightness: each pixel's greyscale in floating
+	 * point, averaged over the block and scaled to [0, 1]. Pixels outside
+	 * the image are white.
+	 */
+	private static double perPixelBrightness(Image image, int top, int left, int height, int width) {
+		Image block = image.subImage(top, left, width, height);
+		double sum = 0.0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int rgb = block.getRGB(y, x);
+				sum += ((rgb >> 16) & 0xFF) * 0.2126 + ((rgb >> 8) & 0xFF) * 0.7152 +
+						(rgb & 0xFF) * 0.0722;
+			}
+		}
+		return sum / (height * width) / 255.0;
+	}
+
+	/*
+	 * Returns an opaque image of random pixels, the same for the same seed.
+	 */
+	private static Image randomImage(int width, int height, long seed) {
+		Random random = new Random(seed);
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+		}
+		return new Image(pixels, width, height);
+	}
+}
@@ -0,0 +1,115 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Writes small PNG files and checks that decoding them strip by strip gives
+ * the block brightness of the whole loaded image.
+ */
+class StripBrightnessReaderTest {
+	/** Widths and heights of the test images, paired by index */
+	private static final int[] WIDTHS = {1, 37, 13, 31, 64};
+	private static final int[] HEIGHTS = {37, 1, 7, 17, 48};
+
+	/** Strip budgets: one row at a time, a few rows, the whole image */
+	private static final int[] STRIP_PIXELS = {1, 40, StripBrightnessReader.DEFAULT_STRIP_PIXELS};
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void matchesTheLoadedImage() throws IOException {
+		for (int i = 0; i < WIDTHS.length; i++) {
+			BufferedImage source = randomImage(WIDTHS[i], HEIGHTS[i], i);
+			String path = write(source, i);
+			BrightnessTable table = new BrightnessTable(new Image(source));
+			int side = Math.max(Image.nextPowerOfTwo(WIDTHS[i]), Image.nextPowerOfTwo(HEIGHTS[i]));
+			for (int blocksPerRow = 1; blocksPerRow <= side; blocksPerRow++) {
+				BlockGrid grid = BlockGrid.padded(WIDTHS[i], HEIGHTS[i], blocksPerRow);
+				for (int stripPixels : STRIP_PIXELS) {
+					double[][] brightness;
+					try (StripBrightnessReader reader = new StripBrightnessReader(path, stripPixels)) {
+						brightness = reader.readBlockBrightness(blocksPerRow, 1);
+					}
+					for (int by = 0; by < blocksPerRow; by++) {
+						for (int bx = 0; bx < blocksPerRow; bx++) {
+							assertEquals(table.blockBrightness(grid.getTop(by), grid.getLeft(bx),
+									grid.getBlockHeight(by), grid.getBlockWidth(bx)), brightness[by][bx],
+									WIDTHS[i] + "x" + HEIGHTS[i] + " grid " + blocksPerRow +
+									" strip " + stripPixels + " block " + by + "," + bx);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void subsamplingAFlatImageKeepsItsBrightness() throws IOException {
+		BufferedImage source = new BufferedImage(31, 17, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 17; y++) {
+			for (int x = 0; x < 31; x++) {
+				source.setRGB(x, y, 0x406080);
+			}
+		}
+		String path = write(source, 0);
+		BrightnessTable table = new BrightnessTable(new Image(source));
+		BlockGrid grid = BlockGrid.padded(31, 17, 4);
+		for (int subsampling = 1; subsampling <= 5; subsampling++) {
+			double[][] brightness;
+			try (StripBrightnessReader reader = new StripBrightnessReader(path, 40)) {
+				brightness = reader.readBlockBrightness(4, subsampling);
+			}
+			for (int by = 0; by < 4; by++) {
+				for (int bx = 0; bx < 4; bx++) {
+					assertEquals(table.blockBrightness(grid.getTop(by), grid.getLeft(bx),
+							grid.getBlockHeight(by), grid.getBlockWidth(bx)), brightness[by][bx],
+							1e-12, "subsampling " + subsampling + " block " + by + "," + bx);
+				}
+			}
+		}
+	}
+
+	@Test
+	void refusesAGridFinerThanThePaddedImage() throws IOException {
+		String path = write(randomImage(13, 7, 0), 0);
+		try (StripBrightnessReader reader = new StripBrightnessReader(path)) {
+			assertThrows(IllegalArgumentException.class, () -> reader.readBlockBrightness(17, 1));
+			assertThrows(IllegalArgumentException.class, () -> reader.readBlockBrightness(4, 0));
+		}
+	}
+
+	/*
+	 * Writes an image as a PNG file in the temporary directory.
+	 */
+	private String write(BufferedImage image, int index) throws IOException {
+		File file = directory.resolve("image" + index + ".png").toFile();
+		ImageIO.write(image, "png", file);
+		return file.getPath();
+	}
+
+	/*
+	 * Returns an image of random pixels, the same for the same seed.
+	 */
+	private static BufferedImage randomImage(int width, int height, long seed) {
+		Random random = new Random(seed);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, random.nextInt(0x1000000));
+			}
+		}
+		return image;
+	}
+}
@@ -0,0 +1,94 @@
+package image_char_matching;
+
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * The original brightness matcher, kept as the reference the compiled
+ * lookups are checked against: a TreeMap from normalized brightness to the
+ * characters of that brightness, walked with floorEntry and ceilingEntry.
+ */
+final class BaselineMatcher {
+	private final TreeMap<Double, PriorityQueue<Character>> map = new TreeMap<>();
+	private final String roundingMode;
+
+	/**
+	 * Builds the map of a charset.
+	 *
+	 * @param charset      The characters, at least one
+	 * @param roundingMode "abs", "up" or "down"
+	 */
+	BaselineMatcher(char[] charset, String roundingMode) {
+		this.roundingMode = roundingMode;
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		for (char c : charset) {
+			min = Math.min(min, rawBrightness(c));
+			max = Math.max(max, rawBrightness(c));
+		}
+		for (char c : charset) {
+			double brightness = max == min ? 0.0 : (rawBrightness(c) - min) / (max - min);
+			map.computeIfAbsent(brightness, k -> new PriorityQueue<>()).add(c);
+		}
+	}
+
+	/**
+	 * Returns the entry a brightness maps to, with the original floor,
+	 * ceiling and tie rules.
+	 *
+	 * @param brightness The brightness value to match
+	 * @return The normalized brightness and the characters it stands for
+	 */
+	Map.Entry<Double, PriorityQueue<Character>> entryFor(double brightness) {
+		Map.Entry<Double, PriorityQueue<Character>> floor = map.floorEntry(brightness);
+		Map.Entry<Double, PriorityQueue<Character>> ceil = map.ceilingEntry(brightness);
+		if (floor == null) {
+			return ceil;
+		} else if (ceil == null) {
+			return floor;
+		}
+		switch (roundingMode) {
+			case "up":
+				return ceil;
+			case "down":
+				return floor;
+			default:
+				double floorDiff = Math.abs(brightness - floor.getKey());
+				double ceilDiff = Math.abs(brightness - ceil.getKey());
+				if (floorDiff < ceilDiff) {
+					return floor;
+				} else if (ceilDiff < floorDiff) {
+					return ceil;
+				}
+				return floor.getValue().peek() < ceil.getValue().peek() ? floor : ceil;
+		}
+	}
+
+	/**
+	 * Returns the character a brightness maps to.
+	 *
+	 * @param brightness The brightness value to match
+	 * @return The lowest character of the chosen brightness
+	 */
+	char charFor(double brightness) {
+		return entryFor(brightness).getValue().peek();
+	}
+
+	/**
+	 * Returns the normalized brightness values of the charset, ascending.
+	 *
+	 * @return The keys of the map
+	 */
+	double[] keys() {
+		return map.keySet().stream().mapToDouble(Double::doubleValue).toArray();
+	}
+
+	/*
+	 * The share of white pixels in a character's glyph.
+	 */
+	private static double rawBrightness(char c) {
+		int pixelCount = CharConverter.DEFAULT_PIXEL_RESOLUTION * CharConverter.DEFAULT_PIXEL_RESOLUTION;
+		return (double) CharConverter.countWhitePixels(c) / pixelCount;
+	}
+}
@@ -0,0 +1,151 @@
+package image_char_matching;
+
+import ascii_art.AsciiArtAlgorithm;
+import image.BlockGrid;
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the dot layout of {@link BrailleEncoder} and, through
+ * {@link AsciiArtAlgorithm}, that braille conversion raises the same dots as
+ * sub-pixels averaged pixel by pixel.
+ */
+class BrailleEncoderTest {
+	/** Unicode dot numbers of the sub-pixels, indexed [row][column] */
+	private static final int[][] DOT_NUMBERS = {{1, 4}, {2, 5}, {3, 6}, {7, 8}};
+
+	private final BrailleEncoder encoder = new BrailleEncoder();
+
+	@Test
+	void raisesTheDotOfEachDarkSubPixel() {
+		double[] cells = new double[8];
+		Arrays.fill(cells, 1.0);
+		assertEquals(BrailleEncoder.BLANK, encoder.encode(cells, 4, 2));
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 2; x++) {
+				Arrays.fill(cells, 1.0);
+				cells[y * 2 + x] = 0.0;
+				assertEquals((char) (BrailleEncoder.BLANK + (1 << (DOT_NUMBERS[y][x] - 1))),
+						encoder.encode(cells, 4, 2), "sub-pixel " + y + "," + x);
+			}
+		}
+		Arrays.fill(cells, 0.0);
+		assertEquals('\u28FF', encoder.encode(cells, 4, 2));
+	}
+
+	@Test
+	void raisesDotsBelowTheThresholdOnly() {
+		double[] cells = new double[8];
+		Arrays.fill(cells, BrailleEncoder.DEFAULT_THRESHOLD);
+		assertEquals(BrailleEncoder.BLANK, encoder.encode(cells, 4, 2));
+		Arrays.fill(cells, Math.nextDown(BrailleEncoder.DEFAULT_THRESHOLD));
+		assertEquals('\u28FF', encoder.encode(cells, 4, 2));
+	}
+
+	@Test
+	void repeatsTheSubPixelsOfSmallBlocks() {
+		// One column of two rows: the top row raises dots 1, 2, 4 and 5
+		assertEquals('\u281B', encoder.encode(new double[] {0.0, 1.0}, 2, 1));
+		// One pixel raises every dot
+		assertEquals('\u28FF', encoder.encode(new double[] {0.0}, 1, 1));
+		// Three rows of two spread over four: the last one only stands on dots 7 and 8
+		assertEquals('\u28C0', encoder.encode(new double[] {1.0, 1.0, 1.0, 1.0, 0.0, 0.0}, 3, 2));
+	}
+
+	@Test
+	void matchesPerPixelSubPixels() {
+		int[][] sizes = {{1, 37}, {37, 1}, {13, 7}, {31, 17}};
+		for (int i = 0; i < sizes.length; i++) {
+			int width = sizes[i][0];
+			int height = sizes[i][1];
+			Image image = randomImage(width, height, i);
+			// The side of the padded square
+			int side = Integer.highestOneBit(Math.max(width, height) * 2 - 1);
+			for (int blocksPerRow = 1; blocksPerRow <= side; blocksPerRow *= 2) {
+				assertConverts(image, BlockGrid.padded(width, height, blocksPerRow));
+			}
+			for (int columns = 1; columns <= width; columns += 3) {
+				assertConverts(image, BlockGrid.fitted(width, height, columns));
+			}
+		}
+	}
+
+	/*
+	 * Compares a braille conversion of an image with the per-pixel patterns.
+	 */
+	private void assertConverts(Image image, BlockGrid grid) {
+		assertArrayEquals(perPixelPatterns(image, grid), new AsciiArtAlgorithm(image, grid, encoder).run(),
+				grid + " of " + image.getWidth() + "x" + image.getHeight());
+	}
+
+	/*
+	 * Splits every block into up to 4 x 2 sub-pixels with evenly spread
+	 * edges, averages each pixel by pixel with padding as white, and raises
+	 * the dot of every sub-pixel a dot stands on that is darker than half.
+	 */
+	private static char[][] perPixelPatterns(Image image, BlockGrid grid) {
+		char[][] patterns = new char[grid.getRows()][grid.getColumns()];
+		for (int by = 0; by < grid.getRows(); by++) {
+			int top = grid.getTop(by);
+			int height = grid.getBlockHeight(by);
+			int rows = Math.min(4, height);
+			for (int bx = 0; bx < grid.getColumns(); bx++) {
+				int left = grid.getLeft(bx);
+				int width = grid.getBlockWidth(bx);
+				int columns = Math.min(2, width);
+				int bits = 0;
+				for (int y = 0; y < 4; y++) {
+					int cy = y * rows / 4;
+					int cellTop = top + cy * height / rows;
+					int cellHeight = top + (cy + 1) * height / rows - cellTop;
+					for (int x = 0; x < 2; x++) {
+						int cx = x * columns / 2;
+						int cellLeft = left + cx * width / columns;
+						int cellWidth = left + (cx + 1) * width / columns - cellLeft;
+						if (perPixelBrightness(image, cellTop, cellLeft, cellHeight, cellWidth) < 0.5) {
+							bits |= 1 << (DOT_NUMBERS[y][x] - 1);
+						}
+					}
+				}
+				patterns[by][bx] = (char) (BrailleEncoder.BLANK + bits);
+			}
+		}
+		return patterns;
+	}
+
+	/*
+	 * The original block brightness: each pixel's greyscale in floating
+	 * point, averaged and scaled to [0, 1]. Pixels outside the image are
+	 * white.
+	 */
+	private static double perPixelBrightness(Image image, int top, int left, int height, int width) {
+		Image block = image.subImage(top, left, width, height);
+		double sum = 0.0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int rgb = block.getRGB(y, x);
+				sum += ((rgb >> 16) & 0xFF) * 0.2126 + ((rgb >> 8) & 0xFF) * 0.7152 +
+						(rgb & 0xFF) * 0.0722;
+			}
+		}
+		return sum / (height * width) / 255.0;
+	}
+
+	/*
+	 * Returns an opaque image of random pixels, the same for the same seed.
+	 */
+	private static Image randomImage(int width, int height, long seed) {
+		Random random = new Random(seed);
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+		}
+		return new Image(pixels, width, height);
+	}
+}
@@ -0,0 +1,114 @@
+package image_char_matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks {@link ErrorDiffusion} against a plain sequential diffusion over
+ * the original TreeMap matcher, and the parallel wavefront against the
+ * sequential pass.
+ */
+class ErrorDiffusionTest {
+	private static final char[] CHARSET = " .:-=+*#%@".toCharArray();
+
+	/** Grid sizes, rows paired with columns by index; the last is wide enough to run in parallel */
+	private static final int[] ROWS = {1, 1, 7, 3, 5, 16};
+	private static final int[] COLUMNS = {1, 7, 1, 5, 33, 4096};
+
+	/** Floyd-Steinberg and Atkinson as row offsets, column offsets and shares of a total */
+	private static final int[][][] KERNELS = {
+			{{0, 1, 1, 1}, {1, -1, 0, 1}, {7, 3, 5, 1}, {16}},
+			{{0, 0, 1, 1, 1, 2}, {1, 2, -1, 0, 1, 0}, {1, 1, 1, 1, 1, 1}, {8}}};
+
+	@Test
+	void matchesSequentialReference() {
+		ErrorDiffusion.Kernel[] kernels = {ErrorDiffusion.Kernel.FLOYD_STEINBERG,
+				ErrorDiffusion.Kernel.ATKINSON};
+		for (String mode : new String[] {"abs", "up", "down"}) {
+			SubImgCharMatcher matcher = new SubImgCharMatcher(CHARSET, mode);
+			BaselineMatcher baseline = new BaselineMatcher(CHARSET, mode);
+			for (int k = 0; k < kernels.length; k++) {
+				for (int i = 0; i < ROWS.length; i++) {
+					double[][] brightness = randomGrid(ROWS[i], COLUMNS[i], i);
+					double[][] copy = copy(brightness);
+					assertArrayEquals(diffuse(brightness, baseline, KERNELS[k]),
+							ErrorDiffusion.match(brightness, matcher, kernels[k], null),
+							mode + " " + kernels[k] + " " + ROWS[i] + "x" + COLUMNS[i]);
+					assertArrayEquals(copy, brightness, "the grid must not be modified");
+				}
+			}
+		}
+	}
+
+	@Test
+	void parallelMatchesSequential() {
+		SubImgCharMatcher matcher = new SubImgCharMatcher(CHARSET, "abs");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (ErrorDiffusion.Kernel kernel : ErrorDiffusion.Kernel.values()) {
+				for (int i = 0; i < ROWS.length; i++) {
+					double[][] brightness = randomGrid(ROWS[i], COLUMNS[i], i);
+					assertArrayEquals(ErrorDiffusion.match(brightness, matcher, kernel, null),
+							ErrorDiffusion.match(brightness, matcher, kernel, pool),
+							kernel + " " + ROWS[i] + "x" + COLUMNS[i]);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * Diffuses the error block by block, row by row, pushing it onto the
+	 * neighbours inside the grid in kernel order.
+	 */
+	private static char[][] diffuse(double[][] brightness, BaselineMatcher baseline, int[][] kernel) {
+		double[][] values = copy(brightness);
+		int rows = values.length;
+		int columns = values[0].length;
+		char[][] result = new char[rows][columns];
+		for (int y = 0; y < rows; y++) {
+			for (int x = 0; x < columns; x++) {
+				result[y][x] = baseline.charFor(values[y][x]);
+				double error = values[y][x] - baseline.entryFor(values[y][x]).getKey();
+				for (int k = 0; k < kernel[0].length; k++) {
+					int ty = y + kernel[0][k];
+					int tx = x + kernel[1][k];
+					if (ty < rows && tx >= 0 && tx < columns) {
+						values[ty][tx] += error * ((double) kernel[2][k] / kernel[3][0]);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Returns a deep copy of a grid.
+	 */
+	private static double[][] copy(double[][] grid) {
+		double[][] copy = new double[grid.length][];
+		for (int y = 0; y < grid.length; y++) {
+			copy[y] = grid[y].clone();
+		}
+		return copy;
+	}
+
+	/*
+	 * Returns a grid of random brightness values, the same for the same seed.
+	 */
+	private static double[][] randomGrid(int rows, int columns, long seed) {
+		Random random = new Random(seed);
+		double[][] grid = new double[rows][columns];
+		for (int y = 0; y < rows; y++) {
+			for (int x = 0; x < columns; x++) {
+				grid[y][x] = random.nextDouble();
+			}
+		}
+		return grid;
+	}
+}
@@ -0,0 +1,111 @@
+package image_char_matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the compiled lookup of {@link SubImgCharMatcher}, both its bucket
+ * table and its binary search, against the original TreeMap matcher in
+ * every rounding mode, at the brightness values where the two could differ.
+ */
+class SubImgCharMatcherTest {
+	private static final String[] MODES = {"abs", "up", "down"};
+	private static final String[] CHARSETS = {"0123456789", " .:-=+*#%@", "@.", "x", printableAscii()};
+
+	/** Buckets of the lookup table */
+	private static final int BUCKETS = 4096;
+
+	@Test
+	void matchesTheTreeMapMatcher() {
+		for (String charset : CHARSETS) {
+			for (String mode : MODES) {
+				assertMatches(new SubImgCharMatcher(charset.toCharArray(), mode), charset, mode);
+			}
+		}
+	}
+
+	@Test
+	void matchesTheTreeMapMatcherAfterCharsChange() {
+		for (String mode : MODES) {
+			SubImgCharMatcher matcher = new SubImgCharMatcher("0123456789".toCharArray(), mode);
+			TreeSet<Character> charset = new TreeSet<>();
+			for (char c : "0123456789".toCharArray()) {
+				charset.add(c);
+			}
+			// Changes strictly inside the range reuse the previous table
+			String changes = "+a-5+Q-0+.-9+@-a";
+			for (int i = 0; i < changes.length(); i += 2) {
+				char c = changes.charAt(i + 1);
+				if (changes.charAt(i) == '+') {
+					matcher.addChar(c);
+					charset.add(c);
+				} else {
+					matcher.removeChar(c);
+					charset.remove(c);
+				}
+				StringBuilder chars = new StringBuilder();
+				charset.forEach(chars::append);
+				assertMatches(matcher, chars.toString(), mode);
+			}
+		}
+	}
+
+	@Test
+	void breaksTiesByTheLowerChar() {
+		// Two characters normalize to 0 and 1, so 0.5 is exactly between them
+		SubImgCharMatcher matcher = new SubImgCharMatcher("@.".toCharArray(), "abs");
+		assertEquals('.', matcher.getCharByImageBrightness(0.5));
+		assertEquals('.', matcher.getLookup().charAt(matcher.getLookup().indexOf(0.5)));
+	}
+
+	/*
+	 * Compares the matcher with the TreeMap matcher at every key, just
+	 * around it and halfway to the next, at every bucket edge, and outside
+	 * [0, 1].
+	 */
+	private static void assertMatches(SubImgCharMatcher matcher, String charset, String mode) {
+		BaselineMatcher baseline = new BaselineMatcher(charset.toCharArray(), mode);
+		SubImgCharMatcher.Lookup lookup = matcher.getLookup();
+		List<Double> probes = new ArrayList<>(List.of(-0.25, 0.0, 1.0, 1.25));
+		double[] keys = baseline.keys();
+		for (int i = 0; i < keys.length; i++) {
+			probes.add(keys[i]);
+			probes.add(Math.nextDown(keys[i]));
+			probes.add(Math.nextUp(keys[i]));
+			if (i + 1 < keys.length) {
+				probes.add((keys[i] + keys[i + 1]) / 2);
+			}
+		}
+		for (int bucket = 0; bucket <= BUCKETS; bucket++) {
+			double edge = (double) bucket / BUCKETS;
+			probes.add(edge);
+			probes.add(Math.nextDown(edge));
+		}
+		for (double probe : probes) {
+			char expected = baseline.charFor(probe);
+			String where = "\"" + charset + "\" " + mode + " at " + probe;
+			assertEquals(expected, matcher.getCharByImageBrightness(probe), where);
+			assertEquals(expected, lookup.charAt(lookup.resolve(probe)), where);
+			assertEquals(expected, lookup.charAt(lookup.indexOf(probe)), where);
+			assertEquals(baseline.entryFor(probe).getKey(), lookup.brightnessAt(lookup.indexOf(probe)),
+					where);
+		}
+	}
+
+	/*
+	 * Returns the printable ASCII characters, many of which share a
+	 * brightness.
+	 */
+	private static String printableAscii() {
+		StringBuilder chars = new StringBuilder();
+		for (char c = ' '; c <= '~'; c++) {
+			chars.append(c);
+		}
+		return chars.toString();
+	}
+}